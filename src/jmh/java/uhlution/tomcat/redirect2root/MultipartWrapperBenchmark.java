@@ -0,0 +1,144 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.util.ParameterMap;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * Measures {@link MultipartParameterRequestWrapper} construction and the
+ * repeated parameter and part lookups frameworks perform on it. Half of the
+ * items are form fields, half are small in-memory files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MultipartWrapperBenchmark {
+
+	@Param({ "1", "10", "100" })
+	public int parts;
+
+	private List<DiskFileItem> items;
+	private MockHttpServletRequest request;
+	private MultipartParameterRequestWrapper wrapper;
+
+	@Setup
+	public void setUp() throws IOException {
+		DiskFileItemFactory factory = DiskFileItemFactory.builder().get();
+		items = new ArrayList<>();
+		for (int i = 0; i < parts; i++) {
+			boolean formField = i % 2 == 0;
+			DiskFileItem item = factory.fileItemBuilder()
+					.setFieldName((formField ? "field" : "file") + i)
+					.setContentType(formField ? null : "application/octet-stream")
+					.setFormField(formField)
+					.setFileName(formField ? null : "file" + i + ".bin")
+					.get();
+			try (OutputStream out = item.getOutputStream()) {
+				out.write(("value of item " + i).getBytes(StandardCharsets.UTF_8));
+			}
+			items.add(item);
+		}
+
+		// Tomcat hands out a ParameterMap the wrapper adds the form fields to, a fresh one per request.
+		request = new MockHttpServletRequest() {
+			@Override
+			public Map<String, String[]> getParameterMap() {
+				return new ParameterMap<>();
+			}
+		};
+		request.setContentType("multipart/form-data; boundary=----Benchmark");
+		wrapper = new MultipartParameterRequestWrapper(request, items);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for (DiskFileItem item : items) {
+			item.delete();
+		}
+	}
+
+	@Benchmark
+	public MultipartParameterRequestWrapper construct() {
+		return new MultipartParameterRequestWrapper(request, items);
+	}
+
+	@Benchmark
+	public void parameterMapRepeated(Blackhole blackhole) {
+		for (int i = 0; i < 10; i++) {
+			blackhole.consume(wrapper.getParameterMap());
+		}
+	}
+
+	@Benchmark
+	public void parameterValuesRepeated(Blackhole blackhole) {
+		for (int i = 0; i < 10; i++) {
+			blackhole.consume(wrapper.getParameterValues("field0"));
+		}
+	}
+
+	@Benchmark
+	public void partsRepeated(Blackhole blackhole) {
+		for (int i = 0; i < 10; i++) {
+			Collection<Part> result = wrapper.getParts();
+			blackhole.consume(result);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Measures {@link RedirectToRootValve#invoke(Request, Response)} for root and
+ * non-root URIs. The dispatcher and the next valve do nothing, so the numbers
+ * are the valve's own cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RedirectToRootValveBenchmark {
+
+	// Held strongly, otherwise the level set below may be lost with the logger.
+	private Logger valveLog;
+	private RedirectToRootValve valve;
+	private BenchmarkRequest rootRequest;
+	private BenchmarkRequest tenantRequest;
+	private BenchmarkRequest deepRequest;
+	private Response response;
+
+	@Setup
+	public void setUp() {
+		valveLog = Logger.getLogger(RedirectToRootValve.class.getName());
+		valveLog.setLevel(Level.SEVERE);
+
+		valve = new RedirectToRootValve();
+		valve.setNext(new ValveBase() {
+			@Override
+			public void invoke(Request request, Response response) {
+				// Stands in for the host's pipeline.
+			}
+		});
+
+		Connector connector = new Connector();
+		rootRequest = new BenchmarkRequest(connector, "/");
+		tenantRequest = new BenchmarkRequest(connector, "/tenant");
+		deepRequest = new BenchmarkRequest(connector, "/tenant/app/orders/4711/items/");
+		response = new Response();
+	}
+
+	@Benchmark
+	public Object invokeRoot() throws IOException {
+		valve.invoke(rootRequest, response);
+		return rootRequest.lastAttribute;
+	}
+
+	@Benchmark
+	public Object invokeTenant() throws IOException {
+		valve.invoke(tenantRequest, response);
+		return tenantRequest.lastAttribute;
+	}
+
+	@Benchmark
+	public Object invokeDeepPath() throws IOException {
+		valve.invoke(deepRequest, response);
+		return deepRequest.lastAttribute;
+	}
+
+	/**
+	 * Request with a fixed URI that keeps no attributes, so every invocation
+	 * sees the same state.
+	 */
+	static final class BenchmarkRequest extends Request {
+
+		private static final RequestDispatcher DISPATCHER = new RequestDispatcher() {
+			@Override
+			public void forward(ServletRequest request, ServletResponse response) {
+			}
+
+			@Override
+			public void include(ServletRequest request, ServletResponse response) {
+			}
+		};
+
+		private final String uri;
+		Object lastAttribute;
+
+		BenchmarkRequest(Connector connector, String uri) {
+			super(connector);
+			this.uri = uri;
+		}
+
+		@Override
+		public String getRequestURI() {
+			return uri;
+		}
+
+		@Override
+		public String getContentType() {
+			return null;
+		}
+
+		@Override
+		public HttpServletRequest getRequest() {
+			return this;
+		}
+
+		@Override
+		public DispatcherType getDispatcherType() {
+			return DispatcherType.REQUEST;
+		}
+
+		@Override
+		public RequestDispatcher getRequestDispatcher(String path) {
+			lastAttribute = path;
+			return DISPATCHER;
+		}
+
+		@Override
+		public Object getAttribute(String name) {
+			return null;
+		}
+
+		@Override
+		public void setAttribute(String name, Object value) {
+			lastAttribute = value;
+		}
+	}
+}
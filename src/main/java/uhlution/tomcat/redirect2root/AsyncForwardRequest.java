@@ -0,0 +1,86 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * The request a target sees when the valve forwards from its own async
+ * context. Tomcat does not allow a second {@code startAsync()} in that state,
+ * so the target gets the context of the valve and takes over completing it.
+ */
+final class AsyncForwardRequest extends HttpServletRequestWrapper {
+
+	private final AsyncContext asyncContext;
+	private volatile boolean takenOver;
+
+	AsyncForwardRequest(HttpServletRequest request, AsyncContext asyncContext) {
+		super(request);
+		this.asyncContext = asyncContext;
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		takenOver = true;
+		return asyncContext;
+	}
+
+	/**
+	 * Returns the context of the valve, it keeps wrapping the request and
+	 * response the valve started it with.
+	 */
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		return startAsync();
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return true;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		return asyncContext;
+	}
+
+	/**
+	 * @return whether the target called {@code startAsync()} and completes the
+	 *         request itself
+	 */
+	boolean isTakenOver() {
+		return takenOver;
+	}
+}
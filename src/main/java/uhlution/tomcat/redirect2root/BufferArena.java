@@ -0,0 +1,116 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized slices carved from direct {@link ByteBuffer}s. Small
+ * multipart parts are kept in a slice instead of a {@code byte[]} of their
+ * own, and the slices go back to the pool once the request is done. Slabs are
+ * allocated on demand up to the capacity; when it is exhausted no slice is
+ * handed out and the caller falls back to a {@code DiskFileItem}.
+ */
+final class BufferArena {
+
+	private static final int SLAB_SIZE = 1024 * 1024;
+
+	private final int sliceSize;
+	private final int slicesPerSlab;
+	private final int maxSlabs;
+	private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger slabs = new AtomicInteger();
+	private final AtomicInteger inUse = new AtomicInteger();
+
+	/**
+	 * @param sliceSize largest part kept in the arena
+	 * @param capacity  upper bound of the direct memory taken by the arena; a
+	 *                  capacity below one slice hands out no slices at all
+	 */
+	BufferArena(int sliceSize, long capacity) {
+		this.sliceSize = sliceSize;
+		// A small arena gets a single slab of its capacity, rounded down to whole slices.
+		this.slicesPerSlab = (int) Math.max(1, Math.min(SLAB_SIZE, capacity) / sliceSize);
+		long slabSize = (long) sliceSize * slicesPerSlab;
+		this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, capacity / slabSize);
+	}
+
+	/**
+	 * @return an empty slice, {@code null} if the arena is exhausted
+	 */
+	ByteBuffer acquire() {
+		ByteBuffer slice = free.poll();
+		if (slice == null) {
+			slice = grow();
+			if (slice == null) {
+				return null;
+			}
+		}
+		inUse.incrementAndGet();
+		return slice.clear();
+	}
+
+	void release(ByteBuffer slice) {
+		inUse.decrementAndGet();
+		free.offer(slice);
+	}
+
+	private ByteBuffer grow() {
+		int count;
+		do {
+			count = slabs.get();
+			if (count >= maxSlabs) {
+				// Another request may have released a slice in the meantime.
+				return free.poll();
+			}
+		} while (!slabs.compareAndSet(count, count + 1));
+
+		ByteBuffer slab = ByteBuffer.allocateDirect(sliceSize * slicesPerSlab);
+		for (int i = 1; i < slicesPerSlab; i++) {
+			free.offer(slab.slice(i * sliceSize, sliceSize));
+		}
+		return slab.slice(0, sliceSize);
+	}
+
+	int getSliceSize() {
+		return sliceSize;
+	}
+
+	int getSlicesInUse() {
+		return inUse.get();
+	}
+
+	long getAllocatedBytes() {
+		return (long) slabs.get() * sliceSize * slicesPerSlab;
+	}
+}
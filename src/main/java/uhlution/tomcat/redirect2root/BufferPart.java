@@ -0,0 +1,265 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.FileItemHeaders;
+import org.apache.commons.fileupload2.core.ParameterParser;
+
+/**
+ * Part of a multipart body held in a slice of a {@link BufferArena}. Reads go
+ * straight to the slice, {@link #release()} hands it back to the arena once
+ * the request is done. The slice is then reused by other requests, so streams
+ * and channels of a released part fail instead of reading from it, and
+ * {@link #getByteBuffer()} hands out a copy.
+ */
+final class BufferPart implements ChannelPart {
+
+	private final String name;
+	private final String fileName;
+	private final String contentType;
+	private final FileItemHeaders headers;
+	private final BufferArena arena;
+	private volatile ByteBuffer content;
+
+	/**
+	 * @param content the slice, flipped for reading
+	 */
+	BufferPart(String name, String fileName, String contentType, FileItemHeaders headers, BufferArena arena, ByteBuffer content) {
+		this.name = name;
+		this.fileName = fileName;
+		this.contentType = contentType;
+		this.headers = headers;
+		this.arena = arena;
+		this.content = content;
+	}
+
+	boolean isFormField() {
+		return fileName == null;
+	}
+
+	/**
+	 * @return the content decoded with the charset of the part's Content-Type
+	 */
+	String getString() {
+		return getCharset().decode(content()).toString();
+	}
+
+	/**
+	 * Returns the slice to the arena, the part must not be read afterwards.
+	 */
+	void release() {
+		ByteBuffer buffer = content;
+		if (buffer != null) {
+			// Cleared first, so readers fail before the slice is handed out again.
+			content = null;
+			arena.release(buffer);
+		}
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		ByteBuffer buffer = content();
+		return new InputStream() {
+
+			@Override
+			public int read() {
+				checkNotReleased();
+				return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				checkNotReleased();
+				if (len == 0) {
+					return 0;
+				}
+				if (!buffer.hasRemaining()) {
+					return -1;
+				}
+				int n = Math.min(len, buffer.remaining());
+				buffer.get(b, off, n);
+				return n;
+			}
+
+			@Override
+			public int available() {
+				checkNotReleased();
+				return buffer.remaining();
+			}
+		};
+	}
+
+	@Override
+	public ReadableByteChannel openChannel() {
+		ByteBuffer buffer = content();
+		return new ReadableByteChannel() {
+			private boolean open = true;
+
+			@Override
+			public int read(ByteBuffer dst) {
+				checkNotReleased();
+				if (!buffer.hasRemaining()) {
+					return -1;
+				}
+				int n = Math.min(dst.remaining(), buffer.remaining());
+				dst.put(buffer.slice(buffer.position(), n));
+				buffer.position(buffer.position() + n);
+				return n;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return open;
+			}
+
+			@Override
+			public void close() {
+				open = false;
+			}
+		};
+	}
+
+	@Override
+	public ByteBuffer getByteBuffer() {
+		// The slice must not outlive the request, the caller may keep the copy.
+		ByteBuffer source = content();
+		return ByteBuffer.allocate(source.remaining()).put(source).flip().asReadOnlyBuffer();
+	}
+
+	@Override
+	public void write(String fileName) throws IOException {
+		write(Path.of(fileName));
+	}
+
+	/**
+	 * Writes the slice to the file with a single channel write.
+	 */
+	public void write(Path file) throws IOException {
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = content();
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+		}
+	}
+
+	@Override
+	public void delete() {
+		// The slice is recycled by the valve when the request is done.
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getSubmittedFileName() {
+		return fileName;
+	}
+
+	@Override
+	public long getSize() {
+		ByteBuffer buffer = content;
+		return buffer != null ? buffer.limit() : 0;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return headers.getHeader(name);
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		return toList(headers.getHeaders(name));
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return toList(headers.getHeaderNames());
+	}
+
+	private ByteBuffer content() {
+		ByteBuffer buffer = content;
+		if (buffer == null) {
+			throw released();
+		}
+		// Each reader gets its own position.
+		return buffer.duplicate();
+	}
+
+	private void checkNotReleased() {
+		if (content == null) {
+			throw released();
+		}
+	}
+
+	private IllegalStateException released() {
+		return new IllegalStateException("The part '" + name + "' has already been released.");
+	}
+
+	private Charset getCharset() {
+		if (contentType != null) {
+			ParameterParser parser = new ParameterParser();
+			parser.setLowerCaseNames(true);
+			String charset = parser.parse(contentType, ';').get("charset");
+			if (charset != null) {
+				return Charset.forName(charset);
+			}
+		}
+		return DiskFileItem.DEFAULT_CHARSET;
+	}
+
+	private static List<String> toList(Iterator<String> values) {
+		List<String> result = new ArrayList<>();
+		values.forEachRemaining(result::add);
+		return result;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Path prefixes, file extensions and exact paths of requests that skip the
+ * rewrite, e.g. static assets. Prefixes and extensions are compiled into
+ * tries, so a match walks the forward path once without creating objects.
+ */
+final class BypassRules {
+
+	private final Trie prefixes = new Trie();
+	// Extensions are stored reversed with their dot and matched from the end of the path.
+	private final Trie extensions = new Trie();
+	private final Set<String> paths = new HashSet<>();
+
+	private BypassRules() {
+	}
+
+	/**
+	 * @param prefixes   path prefixes like {@code /static/}, separated by commas or whitespace
+	 * @param extensions file extensions like {@code js}, matched case-insensitively
+	 * @param paths      exact paths like {@code /favicon.ico}
+	 * @return the compiled rules, {@code null} if none are given
+	 */
+	static BypassRules compile(String prefixes, String extensions, String paths) {
+		BypassRules rules = new BypassRules();
+		int count = 0;
+		for (String prefix : split(prefixes)) {
+			rules.prefixes.add(prefix);
+			count++;
+		}
+		for (String extension : split(extensions)) {
+			String ext = extension.replaceFirst("^\\*?\\.", "").toLowerCase(Locale.ROOT);
+			rules.extensions.add(new StringBuilder(".").append(ext).reverse());
+			count++;
+		}
+		for (String path : split(paths)) {
+			rules.paths.add(path);
+			count++;
+		}
+		return count > 0 ? rules : null;
+	}
+
+	/**
+	 * @param forwardPath the path within the root context, a query string is ignored
+	 */
+	boolean matches(String forwardPath) {
+		int end = forwardPath.indexOf('?');
+		if (end < 0) {
+			end = forwardPath.length();
+		}
+		return prefixes.matchesPrefixOf(forwardPath, end)
+				|| extensions.matchesReversedSuffixOf(forwardPath, end)
+				|| (!paths.isEmpty() && paths.contains(end == forwardPath.length() ? forwardPath : forwardPath.substring(0, end)));
+	}
+
+	private static String[] split(String value) {
+		if (value == null || value.isBlank()) {
+			return new String[0];
+		}
+		return Arrays.stream(value.trim().split("[,\\s]+")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+	}
+
+	/**
+	 * Character trie whose children are kept in small arrays, which is compact
+	 * and fast for the handful of rules a server.xml holds.
+	 */
+	private static final class Trie {
+
+		private static final class Node {
+			char[] keys = new char[0];
+			Node[] children = new Node[0];
+			boolean terminal;
+
+			Node child(char c) {
+				for (int i = 0; i < keys.length; i++) {
+					if (keys[i] == c) {
+						return children[i];
+					}
+				}
+				return null;
+			}
+
+			Node addChild(char c) {
+				Node child = child(c);
+				if (child == null) {
+					child = new Node();
+					keys = Arrays.copyOf(keys, keys.length + 1);
+					children = Arrays.copyOf(children, children.length + 1);
+					keys[keys.length - 1] = c;
+					children[children.length - 1] = child;
+				}
+				return child;
+			}
+		}
+
+		private final Node root = new Node();
+
+		void add(CharSequence word) {
+			Node node = root;
+			for (int i = 0; i < word.length(); i++) {
+				node = node.addChild(word.charAt(i));
+			}
+			node.terminal = true;
+		}
+
+		/**
+		 * @return whether a word is a prefix of {@code s[0, end)}
+		 */
+		boolean matchesPrefixOf(CharSequence s, int end) {
+			Node node = root;
+			for (int i = 0; i < end; i++) {
+				node = node.child(s.charAt(i));
+				if (node == null) {
+					return false;
+				}
+				if (node.terminal) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return whether a word read backwards is a suffix of {@code s[0, end)},
+		 *         ignoring the case of ASCII letters
+		 */
+		boolean matchesReversedSuffixOf(CharSequence s, int end) {
+			Node node = root;
+			for (int i = end - 1; i >= 0; i--) {
+				char c = s.charAt(i);
+				node = node.child(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+				if (node == null) {
+					return false;
+				}
+				if (node.terminal) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.tomcat.util.buf.UDecoder;
+
+/**
+ * Answers selected requests with a cacheable redirect to their forward path
+ * instead of forwarding them. The tenant context travels along in a query
+ * parameter of the redirect, which marks the follow-up request as already
+ * rewritten. Being part of the location it survives a cached redirect.
+ */
+final class ClientRedirect {
+
+	private final Set<String> methods;
+	private final String[] prefixes;
+	private final int status;
+	private final String cacheControl;
+	private final String parameter;
+
+	private ClientRedirect(Set<String> methods, String[] prefixes, int status, String cacheControl, String parameter) {
+		this.methods = methods;
+		this.prefixes = prefixes;
+		this.status = status;
+		this.cacheControl = cacheControl;
+		this.parameter = parameter;
+	}
+
+	/**
+	 * @param methods   HTTP methods that are redirected, separated by commas or whitespace
+	 * @param prefixes  forward path prefixes that are redirected, all paths if none are given
+	 * @param status    301, 302, 307 or 308
+	 * @param maxAge    seconds the redirect may be cached
+	 * @param parameter query parameter carrying the context
+	 * @return the compiled redirect, {@code null} if no methods are given
+	 * @throws IllegalArgumentException if the status is no redirect or no
+	 *                                  parameter is given
+	 */
+	static ClientRedirect compile(String methods, String prefixes, int status, int maxAge, String parameter) {
+		String[] methodList = split(methods);
+		if (methodList.length == 0) {
+			return null;
+		}
+		if (status != 301 && status != 302 && status != 307 && status != 308) {
+			throw new IllegalArgumentException("Client redirect status " + status + " is no redirect.");
+		}
+		if (parameter == null || parameter.isBlank()) {
+			// Without a marker the redirected request would be rewritten again.
+			throw new IllegalArgumentException("Client redirects need a context parameter.");
+		}
+		Set<String> methodSet = new HashSet<>();
+		for (String method : methodList) {
+			methodSet.add(method.toUpperCase(Locale.ROOT));
+		}
+		String cacheControl = "public, max-age=" + Math.max(maxAge, 0);
+		return new ClientRedirect(methodSet, split(prefixes), status, cacheControl, parameter.trim());
+	}
+
+	/**
+	 * @param forwardPath the path within the root context
+	 */
+	boolean applies(String method, String forwardPath) {
+		if (!methods.contains(method)) {
+			return false;
+		}
+		if (prefixes.length == 0) {
+			return true;
+		}
+		for (String prefix : prefixes) {
+			if (forwardPath.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sends the redirect to the forward path, keeping the query string.
+	 */
+	void send(Request request, Response response, Rewrite rewrite) {
+		String encodedContext = URLEncoder.encode(rewrite.context(), StandardCharsets.UTF_8);
+		String query = request.getQueryString();
+		StringBuilder location = new StringBuilder(rewrite.forwardPath());
+		location.append('?').append(parameter).append('=').append(encodedContext);
+		if (query != null) {
+			location.append('&').append(query);
+		}
+		response.setStatus(status);
+		response.setHeader("Location", location.toString());
+		response.setHeader("Cache-Control", cacheControl);
+		response.setContentLength(0);
+	}
+
+	/**
+	 * @return the context carried by a redirected request, {@code null} if the
+	 *         request has not been redirected by the valve
+	 */
+	String context(Request request) {
+		String value = queryParameter(request.getQueryString());
+		if (value == null) {
+			return null;
+		}
+		String context;
+		try {
+			context = UDecoder.URLDecode(value, StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		// Only what RewriteScanner produces is accepted: one path segment with its leading '/'.
+		if (context == null || context.length() < 2 || context.charAt(0) != '/' || context.indexOf('/', 1) >= 0) {
+			return null;
+		}
+		return context;
+	}
+
+	private String queryParameter(String query) {
+		if (query == null) {
+			return null;
+		}
+		int length = parameter.length();
+		int start = 0;
+		while (start < query.length()) {
+			int end = query.indexOf('&', start);
+			if (end < 0) {
+				end = query.length();
+			}
+			if (end - start > length && query.charAt(start + length) == '=' && query.startsWith(parameter, start)) {
+				return query.substring(start + length + 1, end);
+			}
+			start = end + 1;
+		}
+		return null;
+	}
+
+	private static String[] split(String value) {
+		if (value == null || value.isBlank()) {
+			return new String[0];
+		}
+		return Arrays.stream(value.trim().split("[,\\s]+")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+	}
+}
@@ -1,10 +1,17 @@
 package uhlution.tomcat.redirect2root;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -12,20 +19,96 @@ import java.util.List;
 
 import org.apache.commons.fileupload2.core.DiskFileItem;
 
-import jakarta.servlet.http.Part;
-
-public class FileItemPart implements Part {
+public class FileItemPart implements ChannelPart {
     private final DiskFileItem item;
+    // Set once the temp file has been moved to its final place by write().
+    private Path movedTo;
+    private long movedSize;
+
     public FileItemPart(DiskFileItem item) { this.item = item; }
-    @Override public InputStream getInputStream() throws IOException { return item.getInputStream(); }
+    DiskFileItem getItem() { return item; }
     @Override public String getContentType() { return item.getContentType(); }
     @Override public String getName() { return item.getFieldName(); }
-    @Override public long getSize() { return item.getSize(); }
+    @Override public long getSize() { return movedTo != null ? movedSize : item.getSize(); }
     @Override public String getSubmittedFileName() { return item.getName(); }
-    @Override public void write(String filename) throws IOException { item.write(Path.of("", filename)); }
+    @Override public void write(String filename) throws IOException { write(Path.of(filename)); }
     @Override public void delete() throws IOException { item.delete(); }
     @Override public String getHeader(String name) { return item.getHeaders().getHeader(name); }
-    public void write(Path file) throws IOException { Files.copy(getInputStream(), file, StandardCopyOption.REPLACE_EXISTING); }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return movedTo != null ? Files.newInputStream(movedTo) : item.getInputStream();
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        Path file = getFile();
+        if (file != null) {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        }
+        return Channels.newChannel(new ByteArrayInputStream(item.get()));
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+        Path file = getFile();
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        return ByteBuffer.wrap(item.get()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Persists the content without streaming it through the heap: a temp file
+     * is renamed to the target if both are on the same file system, otherwise
+     * copied with {@link FileChannel#transferTo}; in-memory content is written
+     * with a single channel write.
+     */
+    public void write(Path file) throws IOException {
+        if (movedTo != null) {
+            Files.copy(movedTo, file, StandardCopyOption.REPLACE_EXISTING);
+        } else if (item.isInMemory()) {
+            try (FileChannel out = openForWrite(file)) {
+                ByteBuffer content = ByteBuffer.wrap(item.get());
+                while (content.hasRemaining()) {
+                    out.write(content);
+                }
+            }
+        } else {
+            Path source = item.getPath();
+            long size = item.getSize();
+            try {
+                Files.move(source, file, StandardCopyOption.ATOMIC_MOVE);
+                movedTo = file;
+                movedSize = size;
+            } catch (AtomicMoveNotSupportedException e) {
+                transfer(source, file);
+            }
+        }
+    }
+
+    private Path getFile() {
+        if (movedTo != null) {
+            return movedTo;
+        }
+        return item.isInMemory() ? null : item.getPath();
+    }
+
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ); FileChannel out = openForWrite(target)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    private static FileChannel openForWrite(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
 
     @Override 
     public Collection<String> getHeaderNames() { 
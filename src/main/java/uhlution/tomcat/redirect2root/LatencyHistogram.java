@@ -0,0 +1,106 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed bucket bounds. Recording is a bucket lookup and
+ * two {@link LongAdder} increments, so threads do not contend on it.
+ */
+final class LatencyHistogram {
+
+	/** Upper bounds of the buckets in microseconds, the last bucket takes everything above. */
+	private static final long[] BOUNDS_MICROS = { 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+			100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000 };
+
+	private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+	private final LongAdder totalNanos = new LongAdder();
+
+	LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		int i = 0;
+		while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) {
+			i++;
+		}
+		buckets[i].increment();
+		totalNanos.add(nanos);
+	}
+
+	long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * @return one line per bucket, e.g. {@code "<= 1ms: 42"}
+	 */
+	String[] toStrings() {
+		String[] result = new String[buckets.length];
+		for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+			result[i] = "<= " + format(BOUNDS_MICROS[i]) + ": " + buckets[i].sum();
+		}
+		result[BOUNDS_MICROS.length] = "> " + format(BOUNDS_MICROS[BOUNDS_MICROS.length - 1]) + ": "
+				+ buckets[BOUNDS_MICROS.length].sum();
+		return result;
+	}
+
+	void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		totalNanos.reset();
+	}
+
+	private static String format(long micros) {
+		if (micros >= 1_000_000) {
+			return micros % 1_000_000 == 0 ? micros / 1_000_000 + "s" : micros / 1_000_000.0 + "s";
+		}
+		if (micros >= 1_000) {
+			return micros % 1_000 == 0 ? micros / 1_000 + "ms" : micros / 1_000.0 + "ms";
+		}
+		return micros + "us";
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for multipart requests: limits the number of concurrent
+ * parses and the sum of the declared body sizes in flight. A request that
+ * does not fit waits in a bounded queue until enough is released or the
+ * timeout expires.
+ */
+final class MultipartAdmission {
+
+	private final int maxConcurrent;
+	private final long maxBytes;
+	private final int maxQueueLength;
+	private final long timeoutNanos;
+
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition released = lock.newCondition();
+	private int active;
+	private long bytesInFlight;
+	private int waiting;
+
+	/**
+	 * @param maxConcurrent  maximum concurrent parses, {@code <= 0} for no limit
+	 * @param maxBytes       maximum sum of the charged bytes, {@code <= 0} for no limit
+	 * @param maxQueueLength maximum number of waiting requests, {@code 0} rejects at once
+	 * @param timeoutMillis  maximum time a request waits for admission
+	 */
+	MultipartAdmission(int maxConcurrent, long maxBytes, int maxQueueLength, long timeoutMillis) {
+		this.maxConcurrent = maxConcurrent;
+		this.maxBytes = maxBytes;
+		this.maxQueueLength = maxQueueLength;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	/**
+	 * @param bytes declared body size charged against the byte budget; a body
+	 *              larger than the whole budget is admitted when nothing else
+	 *              is in flight, a negative size (unknown) is charged with the
+	 *              whole budget
+	 * @return {@code true} if the request was admitted and has to be
+	 *         {@link #release(long) released} afterwards
+	 */
+	boolean acquire(long bytes) throws InterruptedException {
+		long charge = charge(bytes);
+		lock.lock();
+		try {
+			if (waiting == 0 && fits(charge)) {
+				admit(charge);
+				return true;
+			}
+			if (waiting >= maxQueueLength || timeoutNanos <= 0) {
+				return false;
+			}
+			waiting++;
+			try {
+				long remaining = timeoutNanos;
+				while (!fits(charge)) {
+					if (remaining <= 0) {
+						return false;
+					}
+					remaining = released.awaitNanos(remaining);
+				}
+				admit(charge);
+				return true;
+			} finally {
+				waiting--;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void release(long bytes) {
+		long charge = charge(bytes);
+		lock.lock();
+		try {
+			active--;
+			bytesInFlight -= charge;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long charge(long bytes) {
+		if (maxBytes <= 0 || bytes == 0) {
+			return 0;
+		}
+		// A body of unknown size may take up the whole budget.
+		return bytes < 0 ? maxBytes : Math.min(bytes, maxBytes);
+	}
+
+	private boolean fits(long charge) {
+		return (maxConcurrent <= 0 || active < maxConcurrent)
+				&& (maxBytes <= 0 || bytesInFlight + charge <= maxBytes);
+	}
+
+	private void admit(long charge) {
+		active++;
+		bytesInFlight += charge;
+	}
+
+	int getActive() {
+		lock.lock();
+		try {
+			return active;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	long getBytesInFlight() {
+		lock.lock();
+		try {
+			return bytesInFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getWaiting() {
+		lock.lock();
+		try {
+			return waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
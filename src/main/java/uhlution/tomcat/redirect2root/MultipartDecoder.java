@@ -0,0 +1,349 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemFactory.AbstractFileItemBuilder;
+import org.apache.commons.fileupload2.core.FileItemHeaders;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.ParameterParser;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * Incremental multipart/form-data decoder. The body is fed in whatever chunks
+ * arrive, the bytes of a part are spooled to its item as soon as they cannot
+ * belong to the next boundary any more. With a {@link BufferArena}, parts that
+ * fit into a slice are kept there instead of in a {@link DiskFileItem}.
+ */
+final class MultipartDecoder {
+
+	private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+	private static final int MAX_HEADER_SIZE = 10 * 1024;
+
+	private enum State {
+		PREAMBLE, BOUNDARY, HEADERS, BODY, EPILOGUE
+	}
+
+	private final byte[] delimiter;
+	private final DiskFileItemFactory factory;
+	private final long maxRequestSize;
+	private final long maxFileSize;
+	private final long maxFileCount;
+	private final TempFileMonitor tempFiles;
+	private final BufferArena arena;
+	private final List<Part> parts = new ArrayList<>();
+
+	private byte[] buffer;
+	private int start;
+	private int end;
+	private State state = State.PREAMBLE;
+	private long count;
+
+	// The part being decoded, its content goes to either the slice or the item.
+	private boolean open;
+	private String name;
+	private String fileName;
+	private String contentType;
+	private FileItemHeaders headers;
+	private ByteBuffer slice;
+	private DiskFileItem item;
+	private OutputStream out;
+	private long itemSize;
+	private long bytesRead;
+
+	MultipartDecoder(String boundary, DiskFileItemFactory factory, long maxRequestSize, long maxFileSize,
+			long maxFileCount, int bufferSize, TempFileMonitor tempFiles, BufferArena arena) {
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.factory = factory;
+		this.maxRequestSize = maxRequestSize;
+		this.maxFileSize = maxFileSize;
+		this.maxFileCount = maxFileCount;
+		this.tempFiles = tempFiles;
+		this.arena = arena;
+		this.buffer = new byte[bufferSize + delimiter.length];
+		// The first boundary has no line break in front, one is assumed so that it matches the delimiter.
+		buffer[end++] = '\r';
+		buffer[end++] = '\n';
+	}
+
+	/**
+	 * @return the boundary declared in the given Content-Type, {@code null} if there is none
+	 */
+	static String boundary(String contentType) {
+		ParameterParser parser = new ParameterParser();
+		parser.setLowerCaseNames(true);
+		String boundary = parser.parse(contentType, new char[] { ';', ',' }).get("boundary");
+		return boundary == null || boundary.isEmpty() ? null : boundary;
+	}
+
+	void feed(byte[] data, int offset, int length) throws IOException {
+		bytesRead += length;
+		if (maxRequestSize >= 0 && bytesRead > maxRequestSize) {
+			throw new MultipartLimitException("The multipart request exceeds " + maxRequestSize + " bytes.");
+		}
+		append(data, offset, length);
+		while (decode()) {
+			// Continues as long as complete tokens are in the buffer.
+		}
+		compact();
+	}
+
+	/**
+	 * @return the spooled parts in the order of the body, once the whole body has been fed
+	 */
+	List<Part> finish() throws IOException {
+		if (state != State.EPILOGUE) {
+			throw new FileUploadException("The multipart body ended before its closing boundary.");
+		}
+		return parts;
+	}
+
+	/**
+	 * Deletes everything spooled so far after the body could not be read.
+	 */
+	void abort() {
+		if (slice != null) {
+			arena.release(slice);
+			slice = null;
+		}
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// The item is deleted anyway.
+			}
+			out = null;
+			parts.add(new FileItemPart(item));
+		}
+		for (Part part : parts) {
+			if (part instanceof BufferPart bufferPart) {
+				bufferPart.release();
+			} else {
+				DiskFileItem spooled = ((FileItemPart) part).getItem();
+				tempFiles.released(spooled);
+				try {
+					spooled.delete();
+				} catch (IOException e) {
+					// Left to the FileCleaningTracker.
+				}
+			}
+		}
+		parts.clear();
+	}
+
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	private boolean decode() throws IOException {
+		switch (state) {
+		case PREAMBLE:
+		case BODY:
+			int boundary = indexOf(delimiter, start);
+			if (boundary < 0) {
+				// The tail may be the beginning of the delimiter, it is kept until more bytes arrive.
+				int safe = end - delimiter.length + 1;
+				if (safe > start) {
+					write(start, safe);
+					start = safe;
+				}
+				return false;
+			}
+			write(start, boundary);
+			closePart();
+			start = boundary + delimiter.length;
+			state = State.BOUNDARY;
+			return true;
+		case BOUNDARY:
+			if (end - start < 2) {
+				return false;
+			}
+			if (buffer[start] == '-' && buffer[start + 1] == '-') {
+				state = State.EPILOGUE;
+				start = end;
+				return false;
+			}
+			if (buffer[start] != '\r' || buffer[start + 1] != '\n') {
+				throw new FileUploadException("Malformed multipart body, unexpected bytes after a boundary.");
+			}
+			// The line break stays in the buffer, a part without headers starts with the header end.
+			state = State.HEADERS;
+			return true;
+		case HEADERS:
+			int headerEnd = indexOf(HEADER_END, start);
+			if (headerEnd < 0) {
+				if (end - start > MAX_HEADER_SIZE) {
+					throw new FileUploadException("The headers of a part exceed " + MAX_HEADER_SIZE + " bytes.");
+				}
+				return false;
+			}
+			String headers = headerEnd > start ? new String(buffer, start + 2, headerEnd - start - 2, StandardCharsets.UTF_8) : "";
+			start = headerEnd + HEADER_END.length;
+			openPart(headers);
+			state = State.BODY;
+			return true;
+		default:
+			start = end;
+			return false;
+		}
+	}
+
+	private void openPart(String headerBlock) throws IOException {
+		FileItemHeaders partHeaders = AbstractFileItemBuilder.newFileItemHeaders();
+		for (String line : headerBlock.split("\r\n")) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				partHeaders.addHeader(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+			}
+		}
+
+		String disposition = partHeaders.getHeader("Content-Disposition");
+		if (disposition == null) {
+			// Not a form-data part, its content is skipped.
+			return;
+		}
+		if (maxFileCount >= 0 && count >= maxFileCount) {
+			throw new MultipartLimitException("The multipart request contains more than " + maxFileCount + " parts.");
+		}
+		count++;
+
+		ParameterParser parser = new ParameterParser();
+		parser.setLowerCaseNames(true);
+		Map<String, String> params = parser.parse(disposition, ';');
+		name = params.get("name");
+		fileName = params.get("filename");
+		contentType = partHeaders.getHeader("Content-Type");
+		headers = partHeaders;
+		itemSize = 0;
+		open = true;
+		slice = arena != null ? arena.acquire() : null;
+		if (slice == null) {
+			openItem();
+		}
+	}
+
+	private void openItem() throws IOException {
+		item = factory.fileItemBuilder()
+				.setFieldName(name)
+				.setContentType(contentType)
+				.setFormField(fileName == null)
+				.setFileName(fileName)
+				.setFileItemHeaders(headers)
+				.get();
+		out = item.getOutputStream();
+	}
+
+	private void write(int from, int to) throws IOException {
+		if (!open || to <= from) {
+			return;
+		}
+		int length = to - from;
+		itemSize += length;
+		if (maxFileSize >= 0 && itemSize > maxFileSize) {
+			throw new MultipartLimitException("The part '" + name + "' exceeds " + maxFileSize + " bytes.");
+		}
+		if (slice != null) {
+			if (slice.remaining() >= length) {
+				slice.put(buffer, from, length);
+				return;
+			}
+			// Too large for a slice, what has been decoded so far goes to the item first.
+			openItem();
+			Channels.newChannel(out).write(slice.flip());
+			arena.release(slice);
+			slice = null;
+		}
+		out.write(buffer, from, length);
+	}
+
+	private void closePart() throws IOException {
+		if (!open) {
+			return;
+		}
+		open = false;
+		if (slice != null) {
+			parts.add(new BufferPart(name, fileName, contentType, headers, arena, slice.flip()));
+			slice = null;
+		} else {
+			out.close();
+			out = null;
+			tempFiles.spooled(item);
+			parts.add(new FileItemPart(item));
+			item = null;
+		}
+	}
+
+	private int indexOf(byte[] pattern, int from) {
+		byte first = pattern[0];
+		int last = end - pattern.length;
+		for (int i = from; i <= last; i++) {
+			if (buffer[i] != first) {
+				continue;
+			}
+			int k = 1;
+			while (k < pattern.length && buffer[i + k] == pattern[k]) {
+				k++;
+			}
+			if (k == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void append(byte[] data, int offset, int length) {
+		if (end + length > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, end + length));
+		}
+		System.arraycopy(data, offset, buffer, end, length);
+		end += length;
+	}
+
+	private void compact() {
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+	}
+}
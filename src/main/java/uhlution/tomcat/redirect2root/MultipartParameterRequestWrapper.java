@@ -1,126 +1,258 @@
 package uhlution.tomcat.redirect2root;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.function.BooleanSupplier;
 
 import org.apache.catalina.util.ParameterMap;
 import org.apache.commons.fileupload2.core.DiskFileItem;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
 import jakarta.servlet.http.Part;
 
+/**
+ * Request wrapper exposing the form fields and file parts of a multipart body.
+ * The parameter map and part list handed out are immutable snapshots built on
+ * first access and reused until further items are added.
+ */
 public class MultipartParameterRequestWrapper extends HttpServletRequestWrapper {
-	private static final Logger LOG = Logger.getLogger(MultipartParameterRequestWrapper.class.getName());
-    private final Map<String, List<String>> parameters = new HashMap<>();
-    private final Map<String, List<DiskFileItem>> fileItems = new HashMap<>();
+    private static final String[] NO_VALUES = new String[0];
+
+    private final Map<String, List<String>> parameters = new LinkedHashMap<>();
+    private final Map<String, List<Part>> parts = new LinkedHashMap<>();
+    private final List<DiskFileItem> items = new ArrayList<>();
+    private final List<BufferPart> bufferParts = new ArrayList<>();
+    private final StreamingMultipartReader reader;
+
+    private Map<String, String[]> parameterMapView;
+    private List<Part> partsView;
 
     public MultipartParameterRequestWrapper(HttpServletRequest request, List<DiskFileItem> items) {
+        this(request, items.stream().map(FileItemPart::new).toList());
+    }
+
+    /**
+     * Creates a wrapper of parts spooled by the valve, {@link FileItemPart}s
+     * and {@link BufferPart}s in the order of the body.
+     */
+    static MultipartParameterRequestWrapper ofParts(HttpServletRequest request, List<Part> parts) {
+        return new MultipartParameterRequestWrapper(request, parts);
+    }
+
+    private MultipartParameterRequestWrapper(HttpServletRequest request, Collection<? extends Part> spooled) {
         super(request);
-        
+        this.reader = null;
+
         // Copies the existing parameters (GET) into this request.
-        request.getParameterMap().forEach((key, values) -> {
-            parameters.put(key, new ArrayList<>(Arrays.asList(values)));
-            request.getParameterMap().put(key, values);
-        });
-        
-        // Cppies the POST-Parameters and Multipart-Data.
-        Map<String, String[]> parameterMap =  request.getParameterMap();
-        if (parameterMap instanceof ParameterMap<String, String[]>) {        	
-        	((ParameterMap<String, String[]>)parameterMap).setLocked(false);
-        }
-        for (DiskFileItem item : items) {
-            if (item.isFormField()) { // Falls kein Datei-Upload
-                addParameter(item.getFieldName(), item.getString());
-                parameterMap.put(item.getFieldName(), new String[] {item.getString()});
-            } else {            	
-            	fileItems.computeIfAbsent(item.getFieldName(), k -> new ArrayList<>()).add(item);
+        Map<String, String[]> parameterMap = request.getParameterMap();
+        parameterMap.forEach(this::addParameters);
+
+        // Copies the POST-Parameters and Multipart-Data.
+        List<String> formFields = new ArrayList<>();
+        for (Part part : spooled) {
+            if (add(part)) {
+                formFields.add(part.getName());
             }
         }
-        if (parameterMap instanceof ParameterMap<String, String[]>) {        	
-        	((ParameterMap<String, String[]>)parameterMap).setLocked(true);
+
+        // Tomcat's own parameter map gets the form fields too, the forward reads from it.
+        if (parameterMap instanceof ParameterMap<String, String[]> tomcatParameterMap && !formFields.isEmpty()) {
+            tomcatParameterMap.setLocked(false);
+            for (String name : formFields) {
+                tomcatParameterMap.put(name, getParameterMap().get(name));
+            }
+            tomcatParameterMap.setLocked(true);
         }
-        
-        // Sets the parts in the request via Reflection.
-        setPartsOnRequest(request, getParts());
+    }
+
+    /**
+     * Creates a wrapper that reads the multipart body only when the parameters
+     * or parts are accessed. The wrapper has to be the request passed on to the
+     * target, the parts are not copied into Tomcat's request.
+     */
+    MultipartParameterRequestWrapper(HttpServletRequest request, StreamingMultipartReader reader) {
+        super(request);
+        this.reader = reader;
     }
 
     public void addParameter(String name, String value) {
-        parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        parameters.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+        parameterMapView = null;
     }
     
     public void addParameters(String name, String[] values) {
         if (values != null) {
-            parameters.computeIfAbsent(name, k -> new ArrayList<>()).addAll(Arrays.asList(values));
+            parameters.computeIfAbsent(name, k -> new ArrayList<>(values.length)).addAll(Arrays.asList(values));
+            parameterMapView = null;
         }
     }    
 
     @Override
     public String getParameter(String name) {
+        if (reader != null) {
+            // The query parameters precede the form fields, like in getParameterMap().
+            String value = super.getParameter(name);
+            if (value != null) {
+                return value;
+            }
+            readUntil(() -> parameters.containsKey(name));
+        }
         List<String> values = parameters.get(name);
         return (values != null && !values.isEmpty()) ? values.get(0) : super.getParameter(name);
     }
 
     @Override
     public String[] getParameterValues(String name) {
-        List<String> values = parameters.get(name);
-        return (values != null) ? values.toArray(new String[0]) : super.getParameterValues(name);
+        String[] values = getParameterMap().get(name);
+        // A copy, the cached array would let one caller change the values for all others.
+        return (values != null) ? values.clone() : super.getParameterValues(name);
     }
 
     @Override
     public Map<String, String[]> getParameterMap() {
-        return parameters.entrySet().stream()
-            .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().toArray(new String[0])));
+        readAll();
+        Map<String, String[]> view = parameterMapView;
+        if (view == null) {
+            Map<String, String[]> map = new LinkedHashMap<>();
+            if (reader != null) {
+                // The query parameters come from the wrapped request and precede the form fields.
+                map.putAll(super.getParameterMap());
+            }
+            parameters.forEach((name, values) -> map.merge(name, values.toArray(NO_VALUES), MultipartParameterRequestWrapper::concat));
+            view = Collections.unmodifiableMap(map);
+            parameterMapView = view;
+        }
+        return view;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        if (reader == null) {
+            return super.getParameterNames();
+        }
+        return Collections.enumeration(getParameterMap().keySet());
     }
 
     @Override
-    public Part getPart(String name) {
-        List<DiskFileItem> list = fileItems.get(name);
-        return (list != null && !list.isEmpty()) ? new FileItemPart(list.get(0)) : null;
+    public Part getPart(String name) throws IOException, ServletException {
+        if (reader != null) {
+            try {
+                while (!parts.containsKey(name) && readNext()) {
+                    // Reads on until the requested part has been spooled.
+                }
+            } catch (IOException e) {
+                if (MultipartLimitException.isLimitExceeded(e)) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                throw e;
+            }
+        }
+        List<Part> list = parts.get(name);
+        return (list != null && !list.isEmpty()) ? list.get(0) : null;
     }
 
     @Override
     public Collection<Part> getParts() {
-        return fileItems.values().stream()
-            .flatMap(List::stream)
-            .map(FileItemPart::new)
-            .collect(Collectors.toList());
+        readAll();
+        List<Part> view = partsView;
+        if (view == null) {
+            List<Part> list = new ArrayList<>();
+            parts.values().forEach(list::addAll);
+            view = Collections.unmodifiableList(list);
+            partsView = view;
+        }
+        return view;
     }
-    
-    private void setPartsOnRequest(HttpServletRequest request, Collection<Part> parts) {
+
+    /**
+     * @return all items read from the body so far, including the form fields
+     */
+    List<DiskFileItem> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the parts held in slices of a {@link BufferArena}, to be released
+     *         when the request is done
+     */
+    List<BufferPart> getBufferParts() {
+        return bufferParts;
+    }
+
+    /**
+     * @return the reader of a streaming wrapper, {@code null} if the body was parsed up front
+     */
+    StreamingMultipartReader getStreamingReader() {
+        return reader;
+    }
+
+    /**
+     * @return {@code true} if the part is a form field
+     */
+    private boolean add(Part part) {
+        if (part instanceof FileItemPart filePart) {
+            DiskFileItem item = filePart.getItem();
+            items.add(item);
+            if (item.isFormField()) { // Falls kein Datei-Upload
+                addParameter(item.getFieldName(), item.getString());
+                return true;
+            }
+        } else if (part instanceof BufferPart bufferPart) {
+            bufferParts.add(bufferPart);
+            if (bufferPart.isFormField()) {
+                addParameter(bufferPart.getName(), bufferPart.getString());
+                return true;
+            }
+        }
+        parts.computeIfAbsent(part.getName(), k -> new ArrayList<>(1)).add(part);
+        partsView = null;
+        return false;
+    }
+
+    private boolean readNext() throws IOException {
+        Part part = reader.next();
+        if (part == null) {
+            return false;
+        }
+        add(part);
+        return true;
+    }
+
+    private void readAll() {
+        readUntil(() -> false);
+    }
+
+    private void readUntil(BooleanSupplier found) {
+        if (reader == null || reader.isExhausted()) {
+            return;
+        }
         try {
-        	if (hasField(request, "request")) {        		
-        		Field innerRequestFld = request.getClass().getDeclaredField("request");
-        		innerRequestFld.setAccessible(true);
-        		HttpServletRequest innerRequest = (HttpServletRequest)innerRequestFld.get(request);
-        		innerRequestFld.setAccessible(false);
-
-        		// Zugriff auf das `parts`-Feld in `org.apache.catalina.connector.Request`
-        		Field partsField = innerRequest.getClass().getDeclaredField("parts");
-        		partsField.setAccessible(true); // Zugriff auf private Felder ermöglichen
-        		
-        		// Setze die neue Parts-Liste in den Request
-        		partsField.set(innerRequest, parts);
-        	}
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            LOG.warning("Fehler beim Zugriff auf Tomcats parts-Feld via Reflection:\n" + ExceptionUtils.getStackTrace(e));
+            while (!found.getAsBoolean() && readNext()) {
+                // Reads on until the condition is met or the body is exhausted.
+            }
+        } catch (IOException e) {
+            // Servlet spec: exceeded multipart limits are reported as IllegalStateException.
+            if (MultipartLimitException.isLimitExceeded(e)) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            throw new UncheckedIOException(e);
         }
     }
 
-	private boolean hasField(HttpServletRequest request, String fieldName) throws NoSuchFieldException {
-		try {
-			return request.getClass().getDeclaredField(fieldName) != null;
-		} catch (Exception e) {
-			return false;
-		}
-	}    
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
 
 }
@@ -0,0 +1,108 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.util.List;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.Part;
+
+/**
+ * Feeds the request body to a {@link MultipartDecoder} whenever the container
+ * reports readable bytes, so no thread waits for a slow client. The
+ * {@link Completion} runs exactly once, after the whole body has been read or
+ * reading it has failed.
+ */
+final class MultipartReadListener implements ReadListener {
+
+	@FunctionalInterface
+	interface Completion {
+
+		/**
+		 * @param parts   the spooled parts, {@code null} if reading failed
+		 * @param failure why reading failed, {@code null} on success
+		 */
+		void complete(List<Part> parts, Throwable failure);
+	}
+
+	private final ServletInputStream in;
+	private final MultipartDecoder decoder;
+	private final byte[] buffer;
+	private final Completion completion;
+	private boolean done;
+
+	MultipartReadListener(ServletInputStream in, MultipartDecoder decoder, int bufferSize, Completion completion) {
+		this.in = in;
+		this.decoder = decoder;
+		this.buffer = new byte[bufferSize];
+		this.completion = completion;
+	}
+
+	@Override
+	public void onDataAvailable() throws IOException {
+		// Once isReady() returns false the container calls back when there is more to read.
+		while (!done && in.isReady()) {
+			int read = in.read(buffer);
+			if (read < 0) {
+				return;
+			}
+			decoder.feed(buffer, 0, read);
+		}
+	}
+
+	@Override
+	public void onAllDataRead() {
+		if (done) {
+			return;
+		}
+		List<Part> parts;
+		try {
+			parts = decoder.finish();
+		} catch (IOException e) {
+			onError(e);
+			return;
+		}
+		done = true;
+		completion.complete(parts, null);
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		if (done) {
+			return;
+		}
+		done = true;
+		decoder.abort();
+		completion.complete(null, t);
+	}
+}
@@ -31,35 +31,67 @@
 package uhlution.tomcat.redirect2root;
 
 import static org.apache.commons.lang3.ObjectUtils.notEqual;
-import static org.apache.commons.lang3.StringUtils.isBlank;
-import static org.apache.commons.lang3.StringUtils.splitPreserveAllTokens;
-import static org.apache.commons.lang3.StringUtils.substringBefore;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
+import org.apache.catalina.mapper.MappingData;
 import org.apache.catalina.valves.ValveBase;
 import org.apache.commons.fileupload2.core.DiskFileItem;
 import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
 import org.apache.commons.fileupload2.jakarta.JakartaServletFileUpload;
 import org.apache.commons.fileupload2.jakarta.JakartaServletRequestContext;
+import org.apache.commons.io.FileCleaningTracker;
+import org.apache.commons.io.IOUtils;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.buf.UDecoder;
+import org.apache.tomcat.util.http.RequestUtil;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 public class RedirectToRootValve extends ValveBase {
 
 	public static final String ORIGINAL_REQUEST_URI = "originalRequestURI";
 	public static final String ORIGINAL_CONTEXT_PATH = "originalContextPath";
+
+	/** Request attribute with the stage timings of the request, in the format of the Server-Timing header. */
+	public static final String STAGE_TIMINGS = "stageTimings";
+
+	private static final String SERVER_TIMING = "Server-Timing";
+
+	/** 308 Permanent Redirect, {@code HttpServletResponse} only has it from Servlet 6.1 on. */
+	static final int SC_PERMANENT_REDIRECT = 308;
+
+	/** Request note holding the {@link StageTimer} of a request. */
+	private static final String STAGE_TIMER_NOTE = RedirectToRootValve.class.getName() + ".STAGE_TIMER";
+
+	/** Request note marking a request that has already been remapped by the valve. */
+	private static final String REMAPPED_NOTE = RedirectToRootValve.class.getName() + ".REMAPPED";
 	
 	static {
         try (InputStream configStream = RedirectToRootValve.class.getResourceAsStream("/logging.properties")) {
@@ -72,75 +104,703 @@ public class RedirectToRootValve extends ValveBase {
 	}
 	private static final Logger LOG = Logger.getLogger(RedirectToRootValve.class.getName());
 
+	private DispatchMode dispatchMode = DispatchMode.FORWARD;
+	private MultipartMode multipartMode = MultipartMode.EAGER;
+	private long maxRequestSize = -1;
+	private long maxFileSize = -1;
+	private long maxFileCount = -1;
+	private int fileSizeThreshold = 1024 * 1024;
+	private int bufferSize = IOUtils.DEFAULT_BUFFER_SIZE;
+	private String repository;
+	private long multipartAsyncTimeout = 300_000;
+	private volatile ExecutorService virtualThreadExecutor;
+	private long bufferArenaSize = 0;
+	private int bufferSliceSize = 16 * 1024;
+	private volatile BufferArena bufferArena;
+
+	private volatile DiskFileItemFactory fileItemFactory;
+	private FileCleaningTracker fileCleaningTracker;
+	private final TempFileMonitor tempFiles = new TempFileMonitor();
+	private volatile RequestPartsAccessor partsAccessor;
+
+	private int maxConcurrentMultipart = -1;
+	private long maxMultipartBytesInFlight = -1;
+	private int multipartQueueLength = 0;
+	private long multipartQueueTimeout = 5000;
+	private int multipartRetryAfter = 1;
+	private volatile MultipartAdmission multipartAdmission;
+
+	private int rewriteCacheSize = 0;
+	private volatile BoundedCache<String, Rewrite> rewriteCache;
+
+	private String bypassPrefixes;
+	private String bypassExtensions;
+	private String bypassPaths;
+	private BypassAction bypassAction = BypassAction.REMAP;
+	private volatile BypassRules bypassRules;
+
+	private String tenantRegistry;
+	private UnknownTenantAction unknownTenantAction = UnknownTenantAction.NOT_FOUND;
+	private volatile TenantRegistryWatcher tenantRegistryWatcher;
+
+	private boolean auditLogEnabled = false;
+	private String auditLogDirectory = "logs";
+	private String auditLogPrefix = "redirect2root_audit";
+	private int auditLogBufferSize = 8192;
+	private double auditLogSampleRate = 1.0;
+	private volatile RewriteAuditLog auditLog;
+
+	private boolean serverTimingEnabled = false;
+
+	private boolean preferNativeMultipart = false;
+
+	private String clientRedirectMethods;
+	private String clientRedirectPrefixes;
+	private int clientRedirectStatus = SC_PERMANENT_REDIRECT;
+	private int clientRedirectMaxAge = 3600;
+	private String clientRedirectParameter = ORIGINAL_CONTEXT_PATH;
+	private volatile ClientRedirect clientRedirect;
+	private volatile BoundedCache<String, Boolean> nativeMultipartCache;
+
+	private final ValveStatistics statistics = new ValveStatistics();
+
 	@Override
 	public void invoke(Request request, Response response) throws IOException {
+		long start = System.nanoTime();
+		statistics.requests.increment();
+		try {
+			redirect(request, response);
+		} finally {
+			statistics.invokeTime.record(System.nanoTime() - start);
+		}
+	}
+
+	private void redirect(Request request, Response response) throws IOException {
 		String originalUri = request.getRequestURI();
 		
 		if (LOG.isLoggable(Level.FINE)) {
 			LOG.fine("Processing Request '" + request.getRequestURI() + "'.");
 		}
 		
-		if (notEqual(originalUri, "/") || request.getAttribute(ORIGINAL_CONTEXT_PATH) != null) {
+		boolean remapped = request.getNote(REMAPPED_NOTE) != null;
+		ClientRedirect redirect = clientRedirect;
+		// Only requests that could have been redirected themselves are taken as follow-ups.
+		String redirectedContext = !remapped && redirect != null && redirect.applies(request.getMethod(), originalUri)
+				? redirect.context(request)
+				: null;
+
+		if (remapped) {
+			// Already remapped to the root context, must not be rewritten a second time.
+			invokeNext(request, response);
+		} else if (redirectedContext != null) {
+			// Follow-up of a client redirect, it already addresses the root context.
+			arriveRedirected(request, response, redirect, originalUri, redirectedContext);
+		} else if (notEqual(originalUri, "/") || request.getAttribute(ORIGINAL_CONTEXT_PATH) != null) {
+			StageTimer timer = null;
+			if (serverTimingEnabled) {
+				timer = new StageTimer();
+				request.setNote(STAGE_TIMER_NOTE, timer);
+			}
+			Rewrite rewrite = rewrite(originalUri);
+			if (timer != null) {
+				timer.stop(StageTimer.Stage.REWRITE);
+			}
+			if (!isKnownTenant(rewrite.context())) {
+				handleUnknownTenant(request, response);
+				return;
+			}
+			BypassRules bypass = bypassRules;
+			if (bypass != null && bypass.matches(rewrite.forwardPath())) {
+				bypass(request, response, rewrite.forwardPath());
+				return;
+			}
+			if (redirect != null && redirect.applies(request.getMethod(), rewrite.forwardPath())) {
+				statistics.clientRedirects.increment();
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.fine("Client redirect of '" + originalUri + "' to '" + rewrite.forwardPath() + "'.");
+				}
+				redirect.send(request, response, rewrite);
+				return;
+			}
+
 			request.setAttribute(ORIGINAL_REQUEST_URI, originalUri);
-			
-			String originalContext = evaluateOriginalContext(originalUri);
+			String originalContext = rewrite.context();
 			request.setAttribute(ORIGINAL_CONTEXT_PATH, originalContext);
 			request.setAttribute("customerCtx", originalContext);
 
-			String redirectUrl = evaluateRedirectUrl(originalUri, originalContext.length());
+			String redirectUrl = rewrite.forwardPath();
 
-			LOG.warning("Redirect URL '" + redirectUrl + "'.");
+			RewriteAuditLog audit = auditLog;
+			if (audit != null) {
+				audit.record(originalUri, redirectUrl);
+			} else if (LOG.isLoggable(Level.FINE)) {
+				LOG.fine("Redirect URL '" + redirectUrl + "'.");
+			}
 			
+			MultipartParameterRequestWrapper multipartRequest = null;
+			MultipartAdmission admission = null;
+			long admittedBytes = 0;
 			try {
-				if (isMultipartRequest(request)) {
-					wrapRequestWithCopiedParts(request, redirectUrl);			
+				boolean streaming = false;
+				boolean multipart = isMultipartRequest(request);
+				if (multipart) {
+					statistics.multipartRequests.increment();
+					if (preferNativeMultipart && parsesMultipartNatively(request, redirectUrl)) {
+						// The body stays untouched, the target parses it when it asks for the parts.
+						statistics.nativeMultipart.increment();
+						multipart = false;
+					}
 				}
-				
-				RequestDispatcher requestDispatcher = request.getRequestDispatcher(redirectUrl);
-				
-				if (requestDispatcher == null) {
-					LOG.warning("The requestDispatcher is null for request '" + redirectUrl + "'. Request is multipart? " + isMultipartRequest(request));
-					return;
+				if (multipart) {
+					admittedBytes = declaredBodySize(request);
+					if (!admit(multipartAdmission, admittedBytes)) {
+						rejectMultipart(originalUri, response);
+						return;
+					}
+					admission = multipartAdmission;
+					if (multipartMode == MultipartMode.VIRTUAL_THREAD) {
+						forwardOnVirtualThread(request, response, originalUri, redirectUrl, admission, admittedBytes);
+						// From here on the virtual thread releases the admission.
+						admission = null;
+						return;
+					} else if (multipartMode == MultipartMode.NON_BLOCKING) {
+						forwardNonBlocking(request, response, originalUri, redirectUrl, admission, admittedBytes);
+						// From here on the read listener releases the admission.
+						admission = null;
+						return;
+					} else if (multipartMode == MultipartMode.STREAMING) {
+						if (timer != null) {
+							timer.mark();
+						}
+						multipartRequest = wrapRequestWithStreamedParts(request);
+						if (timer != null) {
+							// The body itself is parsed during the forward.
+							timer.stop(StageTimer.Stage.WRAP);
+						}
+						streaming = true;
+					} else {
+						multipartRequest = parseMultipart(request, redirectUrl);
+					}
 				}
-				
-				requestDispatcher.forward(request, response);
-				return;
+
+				// The target has to see the wrapper when streaming, it reads the parts on demand.
+				forward(request, response, redirectUrl, streaming ? request.getRequest() : null,
+						dispatchMode == DispatchMode.REMAP);
 			} catch (ServletException | IOException e) {
+				if (MultipartLimitException.isLimitExceeded(e)) {
+					rejectTooLarge(originalUri, response, e);
+					return;
+				}
 				throw new RuntimeException(e);
+			} finally {
+				if (multipartRequest != null && request.isAsyncStarted()) {
+					// The target went async and may still read the parts.
+					releaseOnComplete(request.getAsyncContext(), multipartRequest, admission, admittedBytes);
+				} else {
+					releaseMultipart(multipartRequest, admission, admittedBytes);
+				}
 			}
 		} else if(request.getDispatcherType() == DispatcherType.FORWARD) {
 			if (LOG.isLoggable(Level.FINE)) {
 				LOG.fine("Request zu '" + request.getRequestURI() + "' wird nicht weiter geforwardet.");
 			}
 		} else {
+			invokeNext(request, response);
+		}
+	}
+
+	/**
+	 * @param target the request to pass to the target instead of {@code request},
+	 *               or {@code null}
+	 */
+	private void forward(Request request, Response response, String redirectUrl, HttpServletRequest target,
+			boolean remap) throws IOException, ServletException {
+		RequestDispatcher requestDispatcher = null;
+		if (!remap) {
+			requestDispatcher = request.getRequestDispatcher(redirectUrl);
+			if (requestDispatcher == null) {
+				statistics.dispatcherMissing.increment();
+				LOG.warning("The requestDispatcher is null for request '" + redirectUrl + "'. Request is multipart? " + isMultipartRequest(request));
+				return;
+			}
+		}
+
+		statistics.forwards.increment();
+		StageTimer timer = stageTimer(request);
+		if (timer != null) {
+			publishTimings(request, response, timer);
+			timer.mark();
+		}
+		long forwardStart = System.nanoTime();
+		try {
+			if (remap) {
+				remap(request, response, redirectUrl);
+			} else if (target != null) {
+				requestDispatcher.forward(target, response.getResponse());
+			} else {
+				requestDispatcher.forward(request, response);
+			}
+		} finally {
+			statistics.forwardTime.record(System.nanoTime() - forwardStart);
+			if (timer != null) {
+				timer.stop(StageTimer.Stage.FORWARD);
+				publishTimings(request, response, timer);
+			}
+		}
+	}
+
+	private StageTimer stageTimer(Request request) {
+		return serverTimingEnabled ? (StageTimer) request.getNote(STAGE_TIMER_NOTE) : null;
+	}
+
+	/**
+	 * Sets the timings recorded so far as request attribute and, unless the
+	 * response has already been committed, as Server-Timing header.
+	 */
+	private static void publishTimings(Request request, Response response, StageTimer timer) {
+		String timings = timer.toString();
+		request.setAttribute(STAGE_TIMINGS, timings);
+		if (!response.isCommitted()) {
+			response.setHeader(SERVER_TIMING, timings);
+		}
+	}
+
+	/**
+	 * Puts the request into async mode and parses the body on a virtual thread,
+	 * so a slowly uploading client does not block a container thread. The
+	 * virtual thread forwards like the other modes and completes the request,
+	 * unless the target called {@code startAsync()} and completes it itself.
+	 */
+	private void forwardOnVirtualThread(Request request, Response response, String originalUri, String redirectUrl,
+			MultipartAdmission admission, long admittedBytes) {
+		request.setAsyncSupported(true);
+		AsyncContext asyncContext = request.startAsync(request.getRequest(), response.getResponse());
+		asyncContext.setTimeout(multipartAsyncTimeout);
+		// Listeners have to be added while the container still dispatches the request.
+		DeferredRelease deferredRelease = new DeferredRelease();
+		asyncContext.addListener(deferredRelease);
+		Context context = request.getContext();
+		try {
+			getVirtualThreadExecutor().execute(() -> {
+				ClassLoader originalClassLoader = context.bind(false, null);
+				MultipartParameterRequestWrapper multipartRequest = null;
+				AsyncForwardRequest target = null;
+				try {
+					multipartRequest = parseMultipart(request, redirectUrl);
+					target = new AsyncForwardRequest(request.getRequest(), asyncContext);
+					// A remap would run the host pipeline on this thread, the dispatcher is used instead.
+					forward(request, response, redirectUrl, target, false);
+				} catch (Exception e) {
+					failAsync(originalUri, response, e);
+				} finally {
+					completeForward(asyncContext, target, deferredRelease, multipartRequest, admission, admittedBytes);
+					context.unbind(false, originalClassLoader);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// The valve is being stopped.
+			complete(asyncContext);
+			throw e;
+		}
+	}
+
+	/**
+	 * Puts the request into async mode and decodes the body with a
+	 * {@link MultipartReadListener}, so no thread is held while the client
+	 * uploads. The forward runs on the container thread that reports the end
+	 * of the body. A target that calls {@code startAsync()} completes the
+	 * request itself.
+	 */
+	private void forwardNonBlocking(Request request, Response response, String originalUri, String redirectUrl,
+			MultipartAdmission admission, long admittedBytes) throws IOException {
+		String boundary = MultipartDecoder.boundary(request.getContentType());
+		if (boundary == null) {
+			if (admission != null) {
+				admission.release(admittedBytes);
+			}
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		StageTimer timer = stageTimer(request);
+		if (timer != null) {
+			timer.mark();
+		}
+		request.setAsyncSupported(true);
+		AsyncContext asyncContext = request.startAsync(request.getRequest(), response.getResponse());
+		asyncContext.setTimeout(multipartAsyncTimeout);
+		DeferredRelease deferredRelease = new DeferredRelease();
+		asyncContext.addListener(deferredRelease);
+		long parseStart = System.nanoTime();
+		MultipartDecoder decoder = new MultipartDecoder(boundary, getFileItemFactory(), maxRequestSize, maxFileSize,
+				maxFileCount, bufferSize, tempFiles, bufferArena);
+
+		ServletInputStream in = request.getInputStream();
+		in.setReadListener(new MultipartReadListener(in, decoder, bufferSize, (parts, failure) -> {
+			MultipartParameterRequestWrapper multipartRequest = null;
+			AsyncForwardRequest target = null;
 			try {
-				getNext().invoke(request, response);
-			} catch (IOException | ServletException e) {
-				throw new RuntimeException(e);
+				if (failure != null) {
+					failAsync(originalUri, response, failure);
+				} else {
+					statistics.parseTime.record(System.nanoTime() - parseStart);
+					statistics.bytesParsed.add(decoder.getBytesRead());
+					if (timer != null) {
+						timer.stop(StageTimer.Stage.PARSE);
+					}
+					multipartRequest = installWrapper(request, MultipartParameterRequestWrapper.ofParts(request.getRequest(), parts));
+					if (timer != null) {
+						timer.stop(StageTimer.Stage.WRAP);
+					}
+					target = new AsyncForwardRequest(request.getRequest(), asyncContext);
+					// A remap would run the host pipeline from within the listener, the dispatcher is used instead.
+					forward(request, response, redirectUrl, target, false);
+				}
+			} catch (Exception e) {
+				failAsync(originalUri, response, e);
+			} finally {
+				completeForward(asyncContext, target, deferredRelease, multipartRequest, admission, admittedBytes);
 			}
+		}));
+	}
+
+	/**
+	 * Ends an async forward of the valve: releases the parts and completes the
+	 * request, or defers the release to the end of the request when the target
+	 * took over the async context.
+	 */
+	private void completeForward(AsyncContext asyncContext, AsyncForwardRequest target,
+			DeferredRelease deferredRelease, MultipartParameterRequestWrapper multipartRequest,
+			MultipartAdmission admission, long admittedBytes) {
+		if (target != null && target.isTakenOver()) {
+			deferredRelease.defer(() -> releaseMultipart(multipartRequest, admission, admittedBytes));
+		} else {
+			releaseMultipart(multipartRequest, admission, admittedBytes);
+			complete(asyncContext);
 		}
 	}
 
-	private void wrapRequestWithCopiedParts(Request request, String servletPath) throws IOException, ServletException {
-        HttpServletRequest httpReq = request.getRequest();
-        
+	private void failAsync(String originalUri, Response response, Throwable e) {
+		try {
+			if (MultipartLimitException.isLimitExceeded(e)) {
+				rejectTooLarge(originalUri, response, e);
+			} else {
+				LOG.log(Level.SEVERE, "Multipart request '" + originalUri + "' failed asynchronously.", e);
+				if (!response.isCommitted()) {
+					response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				}
+			}
+		} catch (IOException ioe) {
+			LOG.warning("Error response for multipart request '" + originalUri + "' could not be sent: " + ioe);
+		}
+	}
+
+	private static void complete(AsyncContext asyncContext) {
+		try {
+			asyncContext.complete();
+		} catch (IllegalStateException e) {
+			// Already completed by the container after the async timeout.
+			LOG.fine("Async request was already completed: " + e.getMessage());
+		}
+	}
+
+	private void rejectTooLarge(String originalUri, Response response, Throwable e) throws IOException {
+		LOG.warning("Multipart request '" + originalUri + "' rejected: " + e.getMessage());
+		response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+	}
+
+	private MultipartParameterRequestWrapper parseMultipart(Request request, String redirectUrl) throws IOException, ServletException {
+		StageTimer timer = stageTimer(request);
+		if (timer != null) {
+			timer.mark();
+		}
+		long parseStart = System.nanoTime();
+		MultipartParameterRequestWrapper multipartRequest = wrapRequestWithCopiedParts(request, redirectUrl);
+		statistics.parseTime.record(System.nanoTime() - parseStart);
+		if (timer != null) {
+			timer.stop(StageTimer.Stage.WRAP);
+		}
+		return multipartRequest;
+	}
+
+	private void releaseMultipart(MultipartParameterRequestWrapper multipartRequest, MultipartAdmission admission, long admittedBytes) {
+		if (multipartRequest != null) {
+			recordStreamedParse(multipartRequest.getStreamingReader());
+			deleteTempFiles(multipartRequest);
+		}
+		if (admission != null) {
+			admission.release(admittedBytes);
+		}
+	}
+
+	/**
+	 * Defers {@link #releaseMultipart} to the end of an async request. Pooled
+	 * slices and temp files would otherwise be reused or deleted while the
+	 * target still holds the parts.
+	 */
+	private void releaseOnComplete(AsyncContext asyncContext, MultipartParameterRequestWrapper multipartRequest,
+			MultipartAdmission admission, long admittedBytes) {
+		DeferredRelease deferredRelease = new DeferredRelease();
+		asyncContext.addListener(deferredRelease);
+		deferredRelease.defer(() -> releaseMultipart(multipartRequest, admission, admittedBytes));
+	}
+
+	/**
+	 * Runs a release once the async request has completed. A release handed
+	 * over after the completion runs at once.
+	 */
+	private static final class DeferredRelease implements AsyncListener {
+
+		private Runnable release;
+		private boolean completed;
+
+		void defer(Runnable release) {
+			synchronized (this) {
+				if (!completed) {
+					this.release = release;
+					return;
+				}
+			}
+			release.run();
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			Runnable pending;
+			synchronized (this) {
+				completed = true;
+				pending = release;
+				release = null;
+			}
+			if (pending != null) {
+				pending.run();
+			}
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// Listeners are dropped when the target starts another async cycle.
+			event.getAsyncContext().addListener(this);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+		}
+	}
+
+	private void invokeNext(Request request, Response response) {
+		try {
+			getNext().invoke(request, response);
+		} catch (IOException | ServletException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Points the request at the forward path and lets the connector map it
+	 * again, as the RewriteValve does. The next valve then hands it to the
+	 * root context directly, without a dispatch through the original one.
+	 */
+	private void remap(Request request, Response response, String forwardPath) throws IOException, ServletException {
+		// The query string of the request stays as it is.
+		int query = forwardPath.indexOf('?');
+		String uri = query >= 0 ? forwardPath.substring(0, query) : forwardPath;
+
+		Connector connector = request.getConnector();
+		String decodedUri = RequestUtil.normalize(UDecoder.URLDecode(uri, connector.getURICharset()));
+		if (decodedUri == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		org.apache.coyote.Request coyoteRequest = request.getCoyoteRequest();
+		coyoteRequest.requestURI().setString(uri);
+		coyoteRequest.requestURI().toChars();
+		coyoteRequest.decodedURI().setString(decodedUri);
+		coyoteRequest.decodedURI().toChars();
+		request.getMappingData().recycle();
+		request.setNote(REMAPPED_NOTE, Boolean.TRUE);
+
+		boolean mapped;
+		try {
+			mapped = connector.getProtocolHandler().getAdapter().prepare(coyoteRequest, response.getCoyoteResponse());
+		} catch (IOException | ServletException e) {
+			throw e;
+		} catch (Exception e) {
+			// As in Tomcat's RewriteValve.
+			throw new ServletException(e);
+		}
+		if (mapped) {
+			getNext().invoke(request, response);
+		}
+	}
+
+	private long declaredBodySize(Request request) {
+		// Chunked bodies declare no length, they are charged with the largest size they may have,
+		// without maxRequestSize that is the whole byte budget of the admission.
+		long contentLength = request.getContentLengthLong();
+		return contentLength >= 0 ? contentLength : maxRequestSize;
+	}
+
+	private boolean admit(MultipartAdmission admission, long bytes) {
+		if (admission == null) {
+			return true;
+		}
+		try {
+			return admission.acquire(bytes);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void rejectMultipart(String originalUri, Response response) throws IOException {
+		statistics.multipartRejected.increment();
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine("Multipart request '" + originalUri + "' rejected, the valve is saturated.");
+		}
+		response.setHeader("Retry-After", Integer.toString(multipartRetryAfter));
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	private MultipartParameterRequestWrapper wrapRequestWithCopiedParts(Request request, String servletPath) throws IOException, ServletException {
         // 📌 Extracts all query parameters manually from the URL (GET-Parameter).
         //Map<String, List<String>> originalParams = extractQueryParameters(httpReq);
 
         // 📌 Parses Multipart-Data using JakartaServletFileUpload.
-        DiskFileItemFactory factory = DiskFileItemFactory.builder()
-                .setBufferSize(1024 * 1024)
-                .get();
-        
-        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload =
-                new JakartaServletFileUpload<>(factory);
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = newFileUpload(getFileItemFactory());
         List<DiskFileItem> items = upload.parseRequest(new JakartaServletRequestContext(request));
+        StageTimer timer = stageTimer(request);
+        if (timer != null) {
+            timer.stop(StageTimer.Stage.PARSE);
+        }
+        return wrapParsedItems(request, items);
+	}
+
+	private MultipartParameterRequestWrapper wrapParsedItems(Request request, List<DiskFileItem> items) {
+        HttpServletRequest httpReq = request.getRequest();
+        for (DiskFileItem item : items) {
+            tempFiles.spooled(item);
+            statistics.bytesParsed.add(item.getSize());
+        }
 
         // 📌 Creates MultipartParameterRequestWrapper with original parameters (POST) and FileItems.
-        MultipartParameterRequestWrapper wrappedRequest = new MultipartParameterRequestWrapper(httpReq, items);
+        return installWrapper(request, new MultipartParameterRequestWrapper(httpReq, items));
+	}
+
+	private MultipartParameterRequestWrapper installWrapper(Request request, MultipartParameterRequestWrapper wrappedRequest) {
+        // 📌 Hands the parts to Tomcat's request, the forward does not pass through the wrapper.
+        getPartsAccessor().setParts(request, wrappedRequest.getParts());
 
         // 📌 Sets wrapper as request object.
         request.setRequest(wrappedRequest);
+        return wrappedRequest;
+	}
+
+	private MultipartParameterRequestWrapper wrapRequestWithStreamedParts(Request request) throws IOException {
+		DiskFileItemFactory factory = getFileItemFactory();
+
+		// Creating the iterator already rejects a declared Content-Length above maxRequestSize.
+		FileItemInputIterator iterator = newFileUpload(factory).getItemIterator(new JakartaServletRequestContext(request));
+		StreamingMultipartReader reader = new StreamingMultipartReader(iterator, factory, maxFileCount, bufferSize, tempFiles,
+				bufferArena);
+
+		MultipartParameterRequestWrapper wrappedRequest = new MultipartParameterRequestWrapper(request.getRequest(), reader);
+		request.setRequest(wrappedRequest);
+		return wrappedRequest;
+	}
+
+	private void recordStreamedParse(StreamingMultipartReader reader) {
+		// A streamed body is parsed during the forward, the reader sums up the time spent on it.
+		if (reader != null && reader.getReadNanos() > 0) {
+			statistics.parseTime.record(reader.getReadNanos());
+			statistics.bytesParsed.add(reader.getBytesRead());
+		}
+	}
+
+	/**
+	 * Deletes the spooled items as soon as the request is done instead of
+	 * leaving them to the {@link FileCleaningTracker}, and recycles the slices
+	 * of the buffered parts.
+	 */
+	private void deleteTempFiles(MultipartParameterRequestWrapper multipartRequest) {
+		for (BufferPart part : multipartRequest.getBufferParts()) {
+			part.release();
+		}
+		for (DiskFileItem item : multipartRequest.getItems()) {
+			tempFiles.released(item);
+			try {
+				item.delete();
+			} catch (Exception e) {
+				LOG.warning("Temp file of multipart item '" + item.getFieldName() + "' could not be deleted: " + e.getMessage());
+			}
+		}
+	}
+
+	private DiskFileItemFactory getFileItemFactory() {
+		DiskFileItemFactory factory = fileItemFactory;
+		if (factory == null) {
+			// Only when the valve is invoked without having been started.
+			factory = newFileItemFactory(null);
+			fileItemFactory = factory;
+		}
+		return factory;
+	}
+
+	private ExecutorService getVirtualThreadExecutor() {
+		ExecutorService executor = virtualThreadExecutor;
+		if (executor == null) {
+			// Only when the valve is invoked without having been started.
+			executor = Executors.newVirtualThreadPerTaskExecutor();
+			virtualThreadExecutor = executor;
+		}
+		return executor;
+	}
+
+	private RequestPartsAccessor getPartsAccessor() {
+		RequestPartsAccessor accessor = partsAccessor;
+		if (accessor == null) {
+			// Only when the valve is invoked without having been started.
+			accessor = RequestPartsAccessor.resolve();
+			partsAccessor = accessor;
+		}
+		return accessor;
+	}
+
+	private DiskFileItemFactory newFileItemFactory(FileCleaningTracker tracker) {
+		DiskFileItemFactory.Builder builder = DiskFileItemFactory.builder()
+				// In fileupload2 the builder's buffer size is the in-memory threshold of the items.
+				// commons-io replaces 0 with its default buffer size, so the smallest threshold is 1.
+				.setBufferSize(Math.max(1, fileSizeThreshold))
+				.setFileCleaningTracker(tracker);
+		if (repository != null) {
+			builder.setPath(getRepositoryPath());
+		}
+		return builder.get();
+	}
+
+	private Path getRepositoryPath() {
+		return resolveAgainstCatalinaBase(repository);
+	}
+
+	private static Path resolveAgainstCatalinaBase(String file) {
+		Path path = Path.of(file);
+		if (!path.isAbsolute()) {
+			path = Path.of(System.getProperty("catalina.base", "")).resolve(path);
+		}
+		return path;
+	}
+
+	private JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> newFileUpload(DiskFileItemFactory factory) {
+		JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>(factory);
+		upload.setSizeMax(maxRequestSize);
+		upload.setFileSizeMax(maxFileSize);
+		upload.setFileCountMax(maxFileCount);
+		return upload;
 	}
 
 	private boolean isMultipartRequest(Request request) {
@@ -148,42 +808,768 @@ public class RedirectToRootValve extends ValveBase {
 		return ct != null && ct.toLowerCase().startsWith("multipart/");
 	}
 
-	private String evaluateRedirectUrl(String originalUri, int originalContextLen) {
-		String redirectUrl = originalUri.substring(originalContextLen);
-		if (isBlank(redirectUrl)) {
-			redirectUrl = "/";
+	/**
+	 * Whether Tomcat parses the body itself once the target asks for the parts.
+	 * {@code Request.getParts()} consults the wrapper the request is mapped to:
+	 * after a forward that is still the wrapper of the original URI, after a
+	 * remap it is the wrapper the forward path maps to.
+	 */
+	private boolean parsesMultipartNatively(Request request, String forwardPath) {
+		if (dispatchMode != DispatchMode.REMAP) {
+			return parsesMultipart(request.getContext(), request.getWrapper());
+		}
+		int query = forwardPath.indexOf('?');
+		String path = query >= 0 ? forwardPath.substring(0, query) : forwardPath;
+		BoundedCache<String, Boolean> cache = nativeMultipartCache;
+		return cache != null ? cache.get(path, p -> mapsToNativeMultipart(request, p)) : mapsToNativeMultipart(request, path);
+	}
+
+	private static Boolean mapsToNativeMultipart(Request request, String path) {
+		Connector connector = request.getConnector();
+		Host host = request.getHost();
+		if (connector == null || connector.getService() == null || host == null) {
+			return Boolean.FALSE;
+		}
+		String decodedPath = RequestUtil.normalize(UDecoder.URLDecode(path, connector.getURICharset()));
+		if (decodedPath == null) {
+			return Boolean.FALSE;
+		}
+		MessageBytes hostName = MessageBytes.newInstance();
+		hostName.setString(host.getName());
+		MessageBytes uri = MessageBytes.newInstance();
+		uri.setString(decodedPath);
+		MappingData mappingData = new MappingData();
+		try {
+			connector.getService().getMapper().map(hostName, uri, null, mappingData);
+		} catch (IOException e) {
+			return Boolean.FALSE;
+		}
+		return Boolean.valueOf(parsesMultipart(mappingData.context, mappingData.wrapper));
+	}
+
+	private static boolean parsesMultipart(Context context, Wrapper wrapper) {
+		return wrapper != null && wrapper.getMultipartConfigElement() != null
+				|| context != null && context.getAllowCasualMultipartParsing();
+	}
+
+	private boolean isKnownTenant(String context) {
+		TenantRegistryWatcher watcher = tenantRegistryWatcher;
+		return watcher == null || watcher.current().contains(context);
+	}
+
+	private void handleUnknownTenant(Request request, Response response) throws IOException {
+		statistics.unknownTenants.increment();
+		if (unknownTenantAction == UnknownTenantAction.PASS_THROUGH) {
+			try {
+				getNext().invoke(request, response);
+			} catch (ServletException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			// A bare status, no error page is rendered for it.
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			response.setContentLength(0);
 		}
-		if (!redirectUrl.startsWith("/")) {
-			redirectUrl = "/" + redirectUrl;
+	}
+
+	/**
+	 * Passes the follow-up request of a client redirect on with the attributes
+	 * a forward would have set.
+	 */
+	private void arriveRedirected(Request request, Response response, ClientRedirect redirect, String uri, String context)
+			throws IOException {
+		if (!isKnownTenant(context)) {
+			handleUnknownTenant(request, response);
+			return;
 		}
-		if (redirectUrl.endsWith("/") && notEqual(redirectUrl, "/")) {
-			redirectUrl = redirectUrl.substring(0, redirectUrl.length() - 1);
+		request.setAttribute(ORIGINAL_REQUEST_URI, "/".equals(uri) ? context : context + uri);
+		request.setAttribute(ORIGINAL_CONTEXT_PATH, context);
+		request.setAttribute("customerCtx", context);
+		invokeNext(request, response);
+	}
+
+	/**
+	 * Handles a request matched by a bypass rule, without attributes, logging
+	 * or multipart handling.
+	 */
+	private void bypass(Request request, Response response, String forwardPath) {
+		statistics.bypassed.increment();
+		if (bypassAction == BypassAction.PASS_THROUGH) {
+			invokeNext(request, response);
+			return;
+		}
+		try {
+			remap(request, response, forwardPath);
+		} catch (IOException | ServletException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Rewrite rewrite(String originalUri) {
+		// getRequestURI() hands out the string cached in the request's MessageBytes, no copy is made.
+		BoundedCache<String, Rewrite> cache = rewriteCache;
+		if (cache != null) {
+			return cache.get(originalUri, RewriteScanner::scan);
 		}
-		return redirectUrl;
+		return RewriteScanner.scan(originalUri);
 	}
 
-	private String evaluateOriginalContext(String originalURI) {
-	    // Zerlege die URI in Token, wobei leere Tokens erhalten bleiben (z.B. vor dem ersten '/')
-	    String[] tokens = splitPreserveAllTokens(originalURI, '/');
-	    
-	    // Prüfe, ob mindestens zwei Tokens vorhanden sind (das erste Token ist ggf. leer)
-	    if (tokens.length < 2) {
-	        return "";
-	    }
-	    // Entferne aus dem ersten relevanten Token (z.B. "abc?param=1") den Query-Teil
-	    String context = substringBefore(tokens[1], "?");
-	    
-	    return "/" + context;
+	public String getDispatchMode() {
+		return dispatchMode.name();
+	}
+
+	/**
+	 * @param dispatchMode {@code forward} (default) forwards through a
+	 *                     {@link RequestDispatcher}, {@code remap} maps the
+	 *                     request to the root context again and invokes the
+	 *                     next valve
+	 */
+	public void setDispatchMode(String dispatchMode) {
+		this.dispatchMode = DispatchMode.parse(dispatchMode);
+	}
+
+	public String getMultipartMode() {
+		return multipartMode.name();
+	}
+
+	/**
+	 * @param multipartMode {@code eager} (default) parses the body before the
+	 *                      forward, {@code streaming} reads the parts only when
+	 *                      the target accesses them, {@code virtual-thread}
+	 *                      parses like {@code eager} on a virtual thread of an
+	 *                      async request, {@code non-blocking} decodes the body
+	 *                      from read listener callbacks of an async request
+	 */
+	public void setMultipartMode(String multipartMode) {
+		this.multipartMode = MultipartMode.parse(multipartMode);
+	}
+
+	public long getMultipartAsyncTimeout() {
+		return multipartAsyncTimeout;
+	}
+
+	/**
+	 * @param multipartAsyncTimeout milliseconds a multipart request may take in
+	 *                              {@code virtual-thread} and {@code non-blocking}
+	 *                              mode, {@code 0} for no timeout
+	 */
+	public void setMultipartAsyncTimeout(long multipartAsyncTimeout) {
+		this.multipartAsyncTimeout = multipartAsyncTimeout;
+	}
+
+	public long getBufferArenaSize() {
+		return bufferArenaSize;
+	}
+
+	/**
+	 * @param bufferArenaSize direct memory in bytes for small parts in
+	 *                        {@code streaming} and {@code non-blocking} mode,
+	 *                        {@code 0} (default) keeps them in their items
+	 */
+	public void setBufferArenaSize(long bufferArenaSize) {
+		this.bufferArenaSize = bufferArenaSize;
+	}
+
+	public int getBufferSliceSize() {
+		return bufferSliceSize;
+	}
+
+	/**
+	 * @param bufferSliceSize largest part in bytes kept in the buffer arena
+	 */
+	public void setBufferSliceSize(int bufferSliceSize) {
+		this.bufferSliceSize = bufferSliceSize;
+	}
+
+	public int getBufferSlicesInUse() {
+		BufferArena arena = bufferArena;
+		return arena != null ? arena.getSlicesInUse() : 0;
+	}
+
+	public long getBufferArenaAllocatedBytes() {
+		BufferArena arena = bufferArena;
+		return arena != null ? arena.getAllocatedBytes() : 0;
+	}
+
+	public long getMaxRequestSize() {
+		return maxRequestSize;
+	}
+
+	/**
+	 * @param maxRequestSize maximum size of a multipart body in bytes, {@code -1} for no limit
+	 */
+	public void setMaxRequestSize(long maxRequestSize) {
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	public long getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	/**
+	 * @param maxFileSize maximum size of a single part in bytes, {@code -1} for no limit
+	 */
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public long getMaxFileCount() {
+		return maxFileCount;
+	}
+
+	/**
+	 * @param maxFileCount maximum number of parts per request, {@code -1} for no limit
+	 */
+	public void setMaxFileCount(long maxFileCount) {
+		this.maxFileCount = maxFileCount;
+	}
+
+	public int getFileSizeThreshold() {
+		return fileSizeThreshold;
+	}
+
+	/**
+	 * @param fileSizeThreshold size in bytes above which a part is written to
+	 *                          disk; values below 1 are taken as 1, which
+	 *                          spools every non-empty part
+	 */
+	public void setFileSizeThreshold(int fileSizeThreshold) {
+		this.fileSizeThreshold = fileSizeThreshold;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @param bufferSize size of the buffer used to copy a streamed part to its item
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public String getRepository() {
+		return repository;
+	}
+
+	/**
+	 * @param repository directory for multipart temp files, relative paths are
+	 *                   resolved against {@code catalina.base}
+	 */
+	public void setRepository(String repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * @return number of multipart temp files currently on disk
+	 */
+	public long getTempFileCount() {
+		return tempFiles.getFiles();
+	}
+
+	/**
+	 * @return bytes currently held in multipart temp files
+	 */
+	public long getTempFileBytes() {
+		return tempFiles.getBytes();
+	}
+
+	public int getMaxConcurrentMultipart() {
+		return maxConcurrentMultipart;
+	}
+
+	/**
+	 * @param maxConcurrentMultipart maximum number of multipart requests parsed
+	 *                               at the same time, {@code -1} for no limit
+	 */
+	public void setMaxConcurrentMultipart(int maxConcurrentMultipart) {
+		this.maxConcurrentMultipart = maxConcurrentMultipart;
+	}
+
+	public long getMaxMultipartBytesInFlight() {
+		return maxMultipartBytesInFlight;
+	}
+
+	/**
+	 * @param maxMultipartBytesInFlight maximum sum of the declared Content-Length
+	 *                                  of the multipart requests in flight,
+	 *                                  {@code -1} for no limit
+	 */
+	public void setMaxMultipartBytesInFlight(long maxMultipartBytesInFlight) {
+		this.maxMultipartBytesInFlight = maxMultipartBytesInFlight;
+	}
+
+	public int getMultipartQueueLength() {
+		return multipartQueueLength;
+	}
+
+	/**
+	 * @param multipartQueueLength number of multipart requests that may wait for
+	 *                             admission, {@code 0} (default) rejects at once
+	 */
+	public void setMultipartQueueLength(int multipartQueueLength) {
+		this.multipartQueueLength = multipartQueueLength;
+	}
+
+	public long getMultipartQueueTimeout() {
+		return multipartQueueTimeout;
+	}
+
+	/**
+	 * @param multipartQueueTimeout milliseconds a queued multipart request waits
+	 *                              for admission before it is rejected
+	 */
+	public void setMultipartQueueTimeout(long multipartQueueTimeout) {
+		this.multipartQueueTimeout = multipartQueueTimeout;
+	}
+
+	public int getMultipartRetryAfter() {
+		return multipartRetryAfter;
+	}
+
+	/**
+	 * @param multipartRetryAfter seconds sent as Retry-After with a 503 for a
+	 *                            rejected multipart request
+	 */
+	public void setMultipartRetryAfter(int multipartRetryAfter) {
+		this.multipartRetryAfter = multipartRetryAfter;
+	}
+
+	public int getMultipartActiveCount() {
+		MultipartAdmission admission = multipartAdmission;
+		return admission != null ? admission.getActive() : 0;
+	}
+
+	public long getMultipartBytesInFlight() {
+		MultipartAdmission admission = multipartAdmission;
+		return admission != null ? admission.getBytesInFlight() : 0;
+	}
+
+	public int getMultipartQueueDepth() {
+		MultipartAdmission admission = multipartAdmission;
+		return admission != null ? admission.getWaiting() : 0;
+	}
+
+	public long getMultipartRejectedCount() {
+		return statistics.multipartRejected.sum();
+	}
+
+	public int getRewriteCacheSize() {
+		return rewriteCacheSize;
+	}
+
+	/**
+	 * @param rewriteCacheSize maximum number of request URIs whose rewrite result
+	 *                         is cached, {@code 0} disables the cache
+	 */
+	public void setRewriteCacheSize(int rewriteCacheSize) {
+		this.rewriteCacheSize = rewriteCacheSize;
+	}
+
+	public long getRewriteCacheHits() {
+		BoundedCache<String, Rewrite> cache = rewriteCache;
+		return cache != null ? cache.getHits() : 0;
+	}
+
+	public long getRewriteCacheMisses() {
+		BoundedCache<String, Rewrite> cache = rewriteCache;
+		return cache != null ? cache.getMisses() : 0;
+	}
+
+	public long getRewriteCacheEvictions() {
+		BoundedCache<String, Rewrite> cache = rewriteCache;
+		return cache != null ? cache.getEvictions() : 0;
+	}
+
+	public String getBypassPrefixes() {
+		return bypassPrefixes;
+	}
+
+	/**
+	 * @param bypassPrefixes path prefixes within the root context, e.g.
+	 *                       {@code /static/}, whose requests skip the rewrite
+	 */
+	public void setBypassPrefixes(String bypassPrefixes) {
+		this.bypassPrefixes = bypassPrefixes;
+	}
+
+	public String getBypassExtensions() {
+		return bypassExtensions;
+	}
+
+	/**
+	 * @param bypassExtensions file extensions, e.g. {@code js,css,ico}, whose
+	 *                         requests skip the rewrite
+	 */
+	public void setBypassExtensions(String bypassExtensions) {
+		this.bypassExtensions = bypassExtensions;
+	}
+
+	public String getBypassPaths() {
+		return bypassPaths;
+	}
+
+	/**
+	 * @param bypassPaths exact paths within the root context, e.g.
+	 *                    {@code /favicon.ico}, whose requests skip the rewrite
+	 */
+	public void setBypassPaths(String bypassPaths) {
+		this.bypassPaths = bypassPaths;
+	}
+
+	public String getBypassAction() {
+		return bypassAction.name();
+	}
+
+	/**
+	 * @param bypassAction {@code remap} (default) or {@code pass-through}
+	 */
+	public void setBypassAction(String bypassAction) {
+		this.bypassAction = BypassAction.parse(bypassAction);
+	}
+
+	public boolean isPreferNativeMultipart() {
+		return preferNativeMultipart;
+	}
+
+	/**
+	 * @param preferNativeMultipart leaves the multipart body to Tomcat when the
+	 *                              target servlet has a multipart config or its
+	 *                              context allows casual multipart parsing
+	 */
+	public void setPreferNativeMultipart(boolean preferNativeMultipart) {
+		this.preferNativeMultipart = preferNativeMultipart;
+	}
+
+	public long getNativeMultipartCount() {
+		return statistics.nativeMultipart.sum();
+	}
+
+	public String getClientRedirectMethods() {
+		return clientRedirectMethods;
+	}
+
+	/**
+	 * @param clientRedirectMethods HTTP methods, e.g. {@code GET,HEAD}, answered
+	 *                              with a redirect to the forward path instead of
+	 *                              a forward; none by default
+	 */
+	public void setClientRedirectMethods(String clientRedirectMethods) {
+		this.clientRedirectMethods = clientRedirectMethods;
+	}
+
+	public String getClientRedirectPrefixes() {
+		return clientRedirectPrefixes;
+	}
+
+	/**
+	 * @param clientRedirectPrefixes forward path prefixes that are redirected,
+	 *                               all paths if none are given
+	 */
+	public void setClientRedirectPrefixes(String clientRedirectPrefixes) {
+		this.clientRedirectPrefixes = clientRedirectPrefixes;
+	}
+
+	public int getClientRedirectStatus() {
+		return clientRedirectStatus;
+	}
+
+	/**
+	 * @param clientRedirectStatus {@code 308} (default) or {@code 301}, also
+	 *                             {@code 307} and {@code 302}
+	 */
+	public void setClientRedirectStatus(int clientRedirectStatus) {
+		this.clientRedirectStatus = clientRedirectStatus;
+	}
+
+	public int getClientRedirectMaxAge() {
+		return clientRedirectMaxAge;
+	}
+
+	/**
+	 * @param clientRedirectMaxAge seconds browsers and caches may keep a redirect
+	 */
+	public void setClientRedirectMaxAge(int clientRedirectMaxAge) {
+		this.clientRedirectMaxAge = clientRedirectMaxAge;
+	}
+
+	public String getClientRedirectParameter() {
+		return clientRedirectParameter;
+	}
+
+	/**
+	 * @param clientRedirectParameter query parameter carrying the context of a
+	 *                                redirected request
+	 */
+	public void setClientRedirectParameter(String clientRedirectParameter) {
+		this.clientRedirectParameter = clientRedirectParameter;
+	}
+
+	public long getClientRedirectCount() {
+		return statistics.clientRedirects.sum();
+	}
+
+	public long getBypassCount() {
+		return statistics.bypassed.sum();
+	}
+
+	public String getTenantRegistry() {
+		return tenantRegistry;
+	}
+
+	/**
+	 * @param tenantRegistry file listing the known tenant contexts, one per line;
+	 *                       relative paths are resolved against {@code catalina.base}.
+	 *                       Without it every first path segment is a tenant.
+	 */
+	public void setTenantRegistry(String tenantRegistry) {
+		this.tenantRegistry = tenantRegistry;
+	}
+
+	public String getUnknownTenantAction() {
+		return unknownTenantAction.name();
+	}
+
+	/**
+	 * @param unknownTenantAction {@code not-found} (default) or {@code pass-through}
+	 */
+	public void setUnknownTenantAction(String unknownTenantAction) {
+		this.unknownTenantAction = UnknownTenantAction.parse(unknownTenantAction);
+	}
+
+	public int getTenantCount() {
+		TenantRegistryWatcher watcher = tenantRegistryWatcher;
+		return watcher != null ? watcher.current().size() : -1;
+	}
+
+	public long getUnknownTenantCount() {
+		return statistics.unknownTenants.sum();
+	}
+
+	public boolean isAuditLogEnabled() {
+		return auditLogEnabled;
+	}
+
+	/**
+	 * @param auditLogEnabled writes every rewrite asynchronously to the audit log
+	 *                        instead of logging it at FINE level
+	 */
+	public void setAuditLogEnabled(boolean auditLogEnabled) {
+		this.auditLogEnabled = auditLogEnabled;
+	}
+
+	public String getAuditLogDirectory() {
+		return auditLogDirectory;
+	}
+
+	/**
+	 * @param auditLogDirectory directory of the audit log files, relative paths
+	 *                          are resolved against {@code catalina.base}
+	 */
+	public void setAuditLogDirectory(String auditLogDirectory) {
+		this.auditLogDirectory = auditLogDirectory;
+	}
+
+	public String getAuditLogPrefix() {
+		return auditLogPrefix;
+	}
+
+	/**
+	 * @param auditLogPrefix file name prefix, the files are named {@code <prefix>.<yyyy-MM-dd>.log}
+	 */
+	public void setAuditLogPrefix(String auditLogPrefix) {
+		this.auditLogPrefix = auditLogPrefix;
+	}
+
+	public int getAuditLogBufferSize() {
+		return auditLogBufferSize;
+	}
+
+	/**
+	 * @param auditLogBufferSize number of records buffered before new ones are dropped
+	 */
+	public void setAuditLogBufferSize(int auditLogBufferSize) {
+		this.auditLogBufferSize = auditLogBufferSize;
+	}
+
+	public double getAuditLogSampleRate() {
+		return auditLogSampleRate;
+	}
+
+	/**
+	 * @param auditLogSampleRate fraction of the rewrites written to the audit log,
+	 *                           {@code 1.0} (default) writes all
+	 */
+	public void setAuditLogSampleRate(double auditLogSampleRate) {
+		this.auditLogSampleRate = auditLogSampleRate;
+	}
+
+	public long getAuditLogWrittenCount() {
+		RewriteAuditLog audit = auditLog;
+		return audit != null ? audit.getWritten() : 0;
+	}
+
+	/**
+	 * @return number of audit records lost because the buffer was full or the file could not be written
+	 */
+	public long getAuditLogDroppedCount() {
+		RewriteAuditLog audit = auditLog;
+		return audit != null ? audit.getDropped() : 0;
+	}
+
+	public boolean isServerTimingEnabled() {
+		return serverTimingEnabled;
+	}
+
+	/**
+	 * @param serverTimingEnabled times the stages of each rewritten request and
+	 *                            publishes them as Server-Timing header and as
+	 *                            request attribute {@value #STAGE_TIMINGS}
+	 */
+	public void setServerTimingEnabled(boolean serverTimingEnabled) {
+		this.serverTimingEnabled = serverTimingEnabled;
+	}
+
+	public long getRequestCount() {
+		return statistics.requests.sum();
+	}
+
+	public long getForwardCount() {
+		return statistics.forwards.sum();
+	}
+
+	public long getMultipartRequestCount() {
+		return statistics.multipartRequests.sum();
+	}
+
+	/**
+	 * @return number of requests that were not forwarded because no
+	 *         {@link RequestDispatcher} was found for the rewritten path
+	 */
+	public long getDispatcherMissingCount() {
+		return statistics.dispatcherMissing.sum();
+	}
+
+	public long getBytesParsed() {
+		return statistics.bytesParsed.sum();
+	}
+
+	public long getInvokeTimeTotalNanos() {
+		return statistics.invokeTime.getTotalNanos();
+	}
+
+	public String[] getInvokeTimeHistogram() {
+		return statistics.invokeTime.toStrings();
+	}
+
+	public long getParseCount() {
+		return statistics.parseTime.getCount();
+	}
+
+	public long getParseTimeTotalNanos() {
+		return statistics.parseTime.getTotalNanos();
+	}
+
+	public String[] getParseTimeHistogram() {
+		return statistics.parseTime.toStrings();
+	}
+
+	public long getForwardTimeTotalNanos() {
+		return statistics.forwardTime.getTotalNanos();
+	}
+
+	public String[] getForwardTimeHistogram() {
+		return statistics.forwardTime.toStrings();
+	}
+
+	/**
+	 * Resets all counters and histograms, exposed as MBean operation.
+	 */
+	public void resetStatistics() {
+		statistics.reset();
 	}
 
 	@Override
 	protected void startInternal() throws LifecycleException {
+		if (repository != null) {
+			try {
+				Files.createDirectories(getRepositoryPath());
+			} catch (IOException e) {
+				throw new LifecycleException("Multipart repository '" + repository + "' could not be created.", e);
+			}
+		}
+		partsAccessor = RequestPartsAccessor.resolve();
+		fileCleaningTracker = new FileCleaningTracker();
+		fileItemFactory = newFileItemFactory(fileCleaningTracker);
+		rewriteCache = rewriteCacheSize > 0 ? new BoundedCache<>(rewriteCacheSize) : null;
+		nativeMultipartCache = preferNativeMultipart && rewriteCacheSize > 0 ? new BoundedCache<>(rewriteCacheSize) : null;
+		bypassRules = BypassRules.compile(bypassPrefixes, bypassExtensions, bypassPaths);
+		try {
+			clientRedirect = ClientRedirect.compile(clientRedirectMethods, clientRedirectPrefixes, clientRedirectStatus,
+					clientRedirectMaxAge, clientRedirectParameter);
+		} catch (IllegalArgumentException e) {
+			throw new LifecycleException(e.getMessage(), e);
+		}
+		bufferArena = bufferArenaSize > 0 ? new BufferArena(bufferSliceSize, bufferArenaSize) : null;
+		if (multipartMode == MultipartMode.VIRTUAL_THREAD) {
+			virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+		}
+		if (maxConcurrentMultipart > 0 || maxMultipartBytesInFlight > 0) {
+			multipartAdmission = new MultipartAdmission(maxConcurrentMultipart, maxMultipartBytesInFlight,
+					multipartQueueLength, multipartQueueTimeout);
+		}
+		if (auditLogEnabled) {
+			try {
+				auditLog = new RewriteAuditLog(resolveAgainstCatalinaBase(auditLogDirectory), auditLogPrefix,
+						auditLogBufferSize, auditLogSampleRate);
+			} catch (IOException e) {
+				throw new LifecycleException("Audit log directory '" + auditLogDirectory + "' could not be created.", e);
+			}
+		}
+		if (tenantRegistry != null) {
+			try {
+				tenantRegistryWatcher = new TenantRegistryWatcher(resolveAgainstCatalinaBase(tenantRegistry));
+			} catch (IOException e) {
+				throw new LifecycleException("Tenant registry '" + tenantRegistry + "' could not be loaded.", e);
+			}
+		}
+
 		super.startInternal();
 	}
 
 	@Override
 	protected void stopInternal() throws LifecycleException {
 		super.stopInternal();
+
+		fileItemFactory = null;
+		rewriteCache = null;
+		nativeMultipartCache = null;
+		bypassRules = null;
+		clientRedirect = null;
+		// Slices still held by running requests are freed with the arena by the garbage collector.
+		bufferArena = null;
+		multipartAdmission = null;
+		if (virtualThreadExecutor != null) {
+			// Requests already handed over are still completed. The executor is kept, so
+			// later ones are rejected instead of starting an executor nobody shuts down.
+			virtualThreadExecutor.shutdown();
+		}
+		if (auditLog != null) {
+			auditLog.close();
+			auditLog = null;
+		}
+		if (tenantRegistryWatcher != null) {
+			try {
+				tenantRegistryWatcher.close();
+			} catch (IOException e) {
+				LOG.warning("Watcher of tenant registry '" + tenantRegistry + "' could not be closed: " + e);
+			}
+			tenantRegistryWatcher = null;
+		}
+		if (fileCleaningTracker != null) {
+			fileCleaningTracker.exitWhenFinished();
+			fileCleaningTracker = null;
+		}
 	}
 
 }
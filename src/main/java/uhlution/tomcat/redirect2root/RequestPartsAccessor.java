@@ -0,0 +1,79 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.logging.Logger;
+
+import org.apache.catalina.connector.Request;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * Writes parsed parts into the private {@code parts} field of Tomcat's
+ * {@link Request}, so that {@code getParts()} on the forwarded request returns
+ * them. The field is looked up once; if this Tomcat version does not have it,
+ * a single warning is logged and the parts are only available via
+ * {@link MultipartParameterRequestWrapper}.
+ */
+final class RequestPartsAccessor {
+
+	private static final Logger LOG = Logger.getLogger(RequestPartsAccessor.class.getName());
+
+	private final VarHandle parts;
+
+	private RequestPartsAccessor(VarHandle parts) {
+		this.parts = parts;
+	}
+
+	static RequestPartsAccessor resolve() {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(Request.class, MethodHandles.lookup());
+			return new RequestPartsAccessor(lookup.findVarHandle(Request.class, "parts", Collection.class));
+		} catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+			LOG.warning("Tomcat's Request.parts field is not accessible, parsed parts are only available through "
+					+ MultipartParameterRequestWrapper.class.getSimpleName() + ": " + e);
+			return new RequestPartsAccessor(null);
+		}
+	}
+
+	boolean isAvailable() {
+		return parts != null;
+	}
+
+	void setParts(Request request, Collection<Part> parts) {
+		if (this.parts != null) {
+			this.parts.set(request, parts);
+		}
+	}
+}
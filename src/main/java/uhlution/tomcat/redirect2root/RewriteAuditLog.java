@@ -0,0 +1,251 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Audit log of the rewrites. Request threads put fixed-size records into a
+ * bounded lock-free ring buffer; a background thread writes them in batches
+ * to a daily rolled file. When the buffer is full the record is dropped and
+ * counted instead of blocking the request.
+ */
+final class RewriteAuditLog implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(RewriteAuditLog.class.getName());
+	private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ISO_LOCAL_DATE;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	// Ring buffer slots, a slot is free for position p when sequences[p & mask] == p.
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final long[] timestamps;
+	private final String[] originalUris;
+	private final String[] forwardPaths;
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+
+	private final double sampleRate;
+	private final LongAdder written = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	private final Path directory;
+	private final String prefix;
+	private final ZoneId zone = ZoneId.systemDefault();
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final StringBuilder line = new StringBuilder(256);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+	private FileChannel channel;
+	private LocalDate channelDate;
+
+	private final Thread writer;
+	private volatile boolean running = true;
+
+	/**
+	 * @param capacity   number of records the buffer holds, rounded up to a power of two
+	 * @param sampleRate fraction of the rewrites that are logged, {@code 1.0} logs all
+	 */
+	RewriteAuditLog(Path directory, String prefix, int capacity, double sampleRate) throws IOException {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.timestamps = new long[size];
+		this.originalUris = new String[size];
+		this.forwardPaths = new String[size];
+		this.sampleRate = sampleRate;
+		this.directory = directory;
+		this.prefix = prefix;
+
+		Files.createDirectories(directory);
+		this.writer = new Thread(this::run, "redirect2root-audit-log");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Called on the request thread; never blocks.
+	 */
+	void record(String originalUri, String forwardPath) {
+		if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return;
+		}
+		long position = tail.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long available = sequences.get(index) - position;
+			if (available == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					timestamps[index] = System.currentTimeMillis();
+					originalUris[index] = originalUri;
+					forwardPaths[index] = forwardPath;
+					// Publishes the slot to the writer.
+					sequences.set(index, position + 1);
+					return;
+				}
+				position = tail.get();
+			} else if (available < 0) {
+				dropped.increment();
+				return;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	long getWritten() {
+		return written.sum();
+	}
+
+	long getDropped() {
+		return dropped.sum();
+	}
+
+	private void run() {
+		while (running) {
+			if (drain() == 0) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+		}
+		drain();
+		closeChannel();
+	}
+
+	/**
+	 * Writes all published records with a single channel write per full buffer.
+	 */
+	private int drain() {
+		int count = 0;
+		try {
+			while (true) {
+				int index = (int) (head & mask);
+				if (sequences.get(index) != head + 1) {
+					break;
+				}
+				append(timestamps[index], originalUris[index], forwardPaths[index]);
+				originalUris[index] = null;
+				forwardPaths[index] = null;
+				// Frees the slot for the lap after this one.
+				sequences.set(index, head + mask + 1);
+				head++;
+				count++;
+			}
+			flush();
+			written.add(count);
+		} catch (IOException e) {
+			LOG.warning("Audit log could not be written, " + count + " records lost: " + e);
+			dropped.add(count);
+			out.clear();
+			closeChannel();
+		}
+		return count;
+	}
+
+	private void append(long timestamp, String originalUri, String forwardPath) throws IOException {
+		line.setLength(0);
+		DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(timestamp), line);
+		line.append(' ').append(originalUri).append(" -> ").append(forwardPath).append('\n');
+
+		LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+		if (!date.equals(channelDate)) {
+			flush();
+			roll(date);
+		}
+		CharBuffer chars = CharBuffer.wrap(line);
+		while (encoder.encode(chars, out, true).isOverflow()) {
+			flush();
+		}
+		encoder.reset();
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	private void roll(LocalDate date) throws IOException {
+		closeChannel();
+		Path file = directory.resolve(prefix + "." + FILE_DATE.format(date) + ".log");
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		channelDate = date;
+	}
+
+	private void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.warning("Audit log could not be closed: " + e);
+			}
+			channel = null;
+			channelDate = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
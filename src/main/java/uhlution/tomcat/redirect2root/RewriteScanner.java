@@ -0,0 +1,95 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+/**
+ * Single pass scanner computing the {@link Rewrite} of a request URI. It reads
+ * the URI through {@link CharSequence} so it works on a {@code String} as well
+ * as on Tomcat's {@code CharChunk}, and allocates one string for the context
+ * and one for the forward path.
+ */
+final class RewriteScanner {
+
+	private RewriteScanner() {
+	}
+
+	static Rewrite scan(CharSequence uri) {
+		int length = uri.length();
+
+		// The context is the first path segment up to the next '/' or '?'.
+		int first = 0;
+		while (first < length && uri.charAt(first) != '/') {
+			first++;
+		}
+		if (first == length) {
+			return new Rewrite("", forwardPath(uri, 0, length));
+		}
+		int end = first + 1;
+		while (end < length) {
+			char c = uri.charAt(end);
+			if (c == '/' || c == '?') {
+				break;
+			}
+			end++;
+		}
+		String context = uri.subSequence(first, end).toString();
+
+		return new Rewrite(context, forwardPath(uri, context.length(), length));
+	}
+
+	/**
+	 * Everything after the context, starting with exactly one '/' and without a
+	 * trailing '/', or "/" if nothing but whitespace is left.
+	 */
+	private static String forwardPath(CharSequence uri, int start, int length) {
+		if (isBlank(uri, start, length)) {
+			return "/";
+		}
+		boolean leadingSlash = uri.charAt(start) == '/';
+		int end = length;
+		if (uri.charAt(length - 1) == '/' && !(leadingSlash && length - start == 1)) {
+			end--;
+		}
+		if (leadingSlash) {
+			return uri.subSequence(start, end).toString();
+		}
+		return new StringBuilder(end - start + 1).append('/').append(uri, start, end).toString();
+	}
+
+	private static boolean isBlank(CharSequence uri, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(uri.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.util.Locale;
+
+/**
+ * Durations of the stages a single request passes in the valve, formatted as
+ * a {@code Server-Timing} header value. A stage is timed from the last
+ * {@link #mark()} or {@link #stop(Stage)} on.
+ */
+final class StageTimer {
+
+	enum Stage {
+		REWRITE, PARSE, WRAP, FORWARD;
+
+		private final String metric = name().toLowerCase(Locale.ROOT);
+	}
+
+	private final long[] nanos = new long[Stage.values().length];
+	private int recorded;
+	private long mark = System.nanoTime();
+
+	/**
+	 * Starts timing the next stage.
+	 */
+	void mark() {
+		mark = System.nanoTime();
+	}
+
+	/**
+	 * Adds the time since the last mark to the stage and starts the next one.
+	 */
+	void stop(Stage stage) {
+		long now = System.nanoTime();
+		nanos[stage.ordinal()] += now - mark;
+		recorded |= 1 << stage.ordinal();
+		mark = now;
+	}
+
+	long getNanos(Stage stage) {
+		return nanos[stage.ordinal()];
+	}
+
+	/**
+	 * @return the recorded stages, e.g. {@code rewrite;dur=0.012, forward;dur=3.250},
+	 *         durations in milliseconds
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(64);
+		for (Stage stage : Stage.values()) {
+			if ((recorded & (1 << stage.ordinal())) != 0) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(stage.metric).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos[stage.ordinal()] / 1e6));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.io.IOUtils;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * Reads the parts of a multipart body one at a time from the request stream.
+ * Size limits are enforced by the underlying iterator while the bytes are
+ * read, the part count limit is checked here before each part is spooled.
+ * With a {@link BufferArena}, parts that fit into a slice are kept there.
+ */
+final class StreamingMultipartReader {
+
+	private final FileItemInputIterator iterator;
+	private final DiskFileItemFactory factory;
+	private final long maxFileCount;
+	private final int bufferSize;
+	private final TempFileMonitor tempFiles;
+	private final BufferArena arena;
+	private byte[] buffer;
+	private long count;
+	private long bytesRead;
+	private long readNanos;
+	private boolean exhausted;
+
+	StreamingMultipartReader(FileItemInputIterator iterator, DiskFileItemFactory factory, long maxFileCount,
+			int bufferSize, TempFileMonitor tempFiles, BufferArena arena) {
+		this.iterator = iterator;
+		this.factory = factory;
+		this.maxFileCount = maxFileCount;
+		this.bufferSize = bufferSize;
+		this.tempFiles = tempFiles;
+		this.arena = arena;
+	}
+
+	/**
+	 * Spools the next part of the body.
+	 *
+	 * @return the next part or {@code null} when the body has been read completely
+	 */
+	Part next() throws IOException {
+		if (exhausted) {
+			return null;
+		}
+		long start = System.nanoTime();
+		try {
+			return read();
+		} finally {
+			readNanos += System.nanoTime() - start;
+		}
+	}
+
+	private Part read() throws IOException {
+		if (!iterator.hasNext()) {
+			exhausted = true;
+			return null;
+		}
+		if (maxFileCount >= 0 && count >= maxFileCount) {
+			exhausted = true;
+			throw new MultipartLimitException("The multipart request contains more than " + maxFileCount + " parts.");
+		}
+		count++;
+
+		FileItemInput input = iterator.next();
+		if (buffer == null) {
+			buffer = new byte[bufferSize];
+		}
+		ByteBuffer slice = arena != null ? arena.acquire() : null;
+		DiskFileItem item = null;
+		try (InputStream in = input.getInputStream()) {
+			int overflow = slice != null ? fill(in, slice) : -1;
+			if (slice != null && overflow < 0) {
+				BufferPart part = new BufferPart(input.getFieldName(), input.isFormField() ? null : input.getName(),
+						input.getContentType(), input.getHeaders(), arena, slice.flip());
+				// The slice belongs to the part now.
+				slice = null;
+				return part;
+			}
+			item = newItem(input);
+			try (OutputStream out = item.getOutputStream()) {
+				if (slice != null) {
+					// Too large for a slice, what has been read so far goes to the item first.
+					drain(slice.flip(), out);
+					out.write(overflow);
+				}
+				bytesRead += IOUtils.copyLarge(in, out, buffer);
+			}
+		} catch (IOException e) {
+			exhausted = true;
+			if (item != null) {
+				item.delete();
+			}
+			throw e;
+		} finally {
+			if (slice != null) {
+				arena.release(slice);
+			}
+		}
+		tempFiles.spooled(item);
+		return new FileItemPart(item);
+	}
+
+	/**
+	 * Reads the part into the slice.
+	 *
+	 * @return {@code -1} if the whole part fits into the slice, otherwise the
+	 *         first byte that did not fit
+	 */
+	private int fill(InputStream in, ByteBuffer slice) throws IOException {
+		while (slice.hasRemaining()) {
+			int read = in.read(buffer, 0, Math.min(buffer.length, slice.remaining()));
+			if (read < 0) {
+				return -1;
+			}
+			slice.put(buffer, 0, read);
+			bytesRead += read;
+		}
+		int next = in.read();
+		if (next >= 0) {
+			bytesRead++;
+		}
+		return next;
+	}
+
+	private void drain(ByteBuffer slice, OutputStream out) throws IOException {
+		while (slice.hasRemaining()) {
+			int length = Math.min(buffer.length, slice.remaining());
+			slice.get(buffer, 0, length);
+			out.write(buffer, 0, length);
+		}
+	}
+
+	private DiskFileItem newItem(FileItemInput input) {
+		return factory.fileItemBuilder()
+				.setFieldName(input.getFieldName())
+				.setContentType(input.getContentType())
+				.setFormField(input.isFormField())
+				.setFileName(input.getName())
+				.setFileItemHeaders(input.getHeaders())
+				.get();
+	}
+
+	boolean isExhausted() {
+		return exhausted;
+	}
+
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	long getReadNanos() {
+		return readNanos;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of the known tenant contexts, compiled into a sorted array.
+ * Lookups are a binary search on the context without creating any objects.
+ */
+final class TenantRegistry {
+
+	private final String[] names;
+
+	private TenantRegistry(String[] names) {
+		this.names = names;
+	}
+
+	/**
+	 * Reads one tenant context per line, with or without leading '/'. Blank
+	 * lines and lines starting with '#' are ignored.
+	 */
+	static TenantRegistry load(Path file) throws IOException {
+		return of(Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	static TenantRegistry of(List<String> lines) {
+		String[] names = lines.stream()
+				.map(String::trim)
+				.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+				.map(line -> line.startsWith("/") ? line.substring(1) : line)
+				.distinct()
+				.sorted()
+				.toArray(String[]::new);
+		return new TenantRegistry(names);
+	}
+
+	/**
+	 * @param context the context as evaluated from the request URI, e.g. {@code "/tenant"}
+	 */
+	boolean contains(String context) {
+		int offset = context.startsWith("/") ? 1 : 0;
+		int low = 0;
+		int high = names.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(names[mid], context, offset);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * Compares {@code name} with {@code context} from {@code offset} on, in the
+	 * order of {@link String#compareTo(String)}.
+	 */
+	private static int compare(String name, String context, int offset) {
+		int length = context.length() - offset;
+		int n = Math.min(name.length(), length);
+		for (int i = 0; i < n; i++) {
+			int diff = name.charAt(i) - context.charAt(offset + i);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return name.length() - length;
+	}
+
+	@Override
+	public String toString() {
+		return "TenantRegistry" + Arrays.toString(names);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a {@link TenantRegistry} in sync with its file. A daemon thread
+ * watches the file's directory and swaps in a freshly compiled registry when
+ * the file changes; readers always see a complete registry.
+ */
+final class TenantRegistryWatcher implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(TenantRegistryWatcher.class.getName());
+
+	private final Path file;
+	private final WatchService watchService;
+	private final Thread thread;
+	private volatile TenantRegistry registry;
+
+	TenantRegistryWatcher(Path file) throws IOException {
+		this.file = file.toAbsolutePath();
+		this.registry = TenantRegistry.load(this.file);
+		this.watchService = this.file.getFileSystem().newWatchService();
+		this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		this.thread = new Thread(this::watch, "redirect2root-tenant-registry");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		LOG.info("Loaded " + registry.size() + " tenant contexts from '" + this.file + "'.");
+	}
+
+	TenantRegistry current() {
+		return registry;
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.context() instanceof Path changedFile && file.getFileName().equals(changedFile)) {
+						changed = true;
+					}
+				}
+				if (changed) {
+					reload();
+				}
+				if (!key.reset()) {
+					LOG.warning("Directory of tenant registry '" + file + "' is no longer watched.");
+					return;
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// Closed by the valve.
+		}
+	}
+
+	private void reload() {
+		try {
+			TenantRegistry reloaded = TenantRegistry.load(file);
+			registry = reloaded;
+			LOG.info("Reloaded " + reloaded.size() + " tenant contexts from '" + file + "'.");
+		} catch (IOException e) {
+			LOG.warning("Tenant registry '" + file + "' could not be reloaded, keeping the previous one: " + e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		thread.interrupt();
+	}
+}
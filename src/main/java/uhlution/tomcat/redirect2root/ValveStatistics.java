@@ -0,0 +1,70 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a {@link RedirectToRootValve}, published
+ * through the valve's MBean.
+ */
+final class ValveStatistics {
+
+	final LongAdder requests = new LongAdder();
+	final LongAdder forwards = new LongAdder();
+	final LongAdder multipartRequests = new LongAdder();
+	final LongAdder multipartRejected = new LongAdder();
+	final LongAdder nativeMultipart = new LongAdder();
+	final LongAdder dispatcherMissing = new LongAdder();
+	final LongAdder unknownTenants = new LongAdder();
+	final LongAdder bypassed = new LongAdder();
+	final LongAdder clientRedirects = new LongAdder();
+	final LongAdder bytesParsed = new LongAdder();
+	final LatencyHistogram invokeTime = new LatencyHistogram();
+	final LatencyHistogram parseTime = new LatencyHistogram();
+	final LatencyHistogram forwardTime = new LatencyHistogram();
+
+	void reset() {
+		requests.reset();
+		forwards.reset();
+		multipartRequests.reset();
+		multipartRejected.reset();
+		nativeMultipart.reset();
+		dispatcherMissing.reset();
+		unknownTenants.reset();
+		bypassed.reset();
+		clientRedirects.reset();
+		bytesParsed.reset();
+		invokeTime.reset();
+		parseTime.reset();
+		forwardTime.reset();
+	}
+}
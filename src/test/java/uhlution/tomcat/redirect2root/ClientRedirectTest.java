@@ -0,0 +1,96 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ClientRedirectTest {
+
+	private final ClientRedirect redirect = ClientRedirect.compile("GET, HEAD", "/public/", 308, 600, "ctx");
+
+	@Test
+	void appliesToConfiguredMethodsAndPrefixes() {
+		assertTrue(redirect.applies("GET", "/public/page"));
+		assertTrue(redirect.applies("HEAD", "/public/"));
+		assertFalse(redirect.applies("POST", "/public/page"));
+		assertFalse(redirect.applies("GET", "/private/page"));
+	}
+
+	@Test
+	void sendsCacheableRedirectWithContextParameter() {
+		Request request = mock(Request.class);
+		Response response = mock(Response.class);
+		when(request.getQueryString()).thenReturn("a=1");
+
+		redirect.send(request, response, new Rewrite("/tenant", "/public/page"));
+
+		verify(response).setStatus(308);
+		verify(response).setHeader("Location", "/public/page?ctx=%2Ftenant&a=1");
+		verify(response).setHeader("Cache-Control", "public, max-age=600");
+	}
+
+	@Test
+	void contextIsReadFromParameter() {
+		Request request = mock(Request.class);
+		when(request.getQueryString()).thenReturn("a=1&ctx=%2Ftenant&actx=x");
+
+		assertEquals("/tenant", redirect.context(request));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "a=1", "xctx=%2Ftenant", "ctx=tenant", "ctx=%2Fa%2Fb", "ctx=%2", "ctx=%2F" })
+	void invalidOrMissingContextIsIgnored(String query) {
+		Request request = mock(Request.class);
+		when(request.getQueryString()).thenReturn(query);
+
+		assertNull(redirect.context(request));
+	}
+
+	@Test
+	void redirectWithoutMarkerIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> ClientRedirect.compile("GET", null, 308, 60, " "));
+		assertThrows(IllegalArgumentException.class, () -> ClientRedirect.compile("GET", null, 200, 60, "ctx"));
+		assertNull(ClientRedirect.compile("", null, 308, 60, "ctx"));
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileItemPartTest {
+
+	private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void temporaryFileIsMovedToTarget() throws IOException {
+		DiskFileItem item = item(1);
+		Path temp = item.getPath();
+		FileItemPart part = new FileItemPart(item);
+		Path target = dir.resolve("target.txt");
+
+		part.write(target);
+
+		assertFalse(Files.exists(temp));
+		assertArrayEquals(CONTENT, Files.readAllBytes(target));
+		assertEquals(CONTENT.length, part.getSize());
+		assertArrayEquals(CONTENT, part.getInputStream().readAllBytes());
+
+		Path copy = dir.resolve("copy.txt");
+		part.write(copy.toString());
+		assertArrayEquals(CONTENT, Files.readAllBytes(copy));
+	}
+
+	@Test
+	void inMemoryItemIsWrittenThroughChannel() throws IOException {
+		FileItemPart part = new FileItemPart(item(1024));
+		Path target = dir.resolve("target.txt");
+
+		part.write(target);
+
+		assertArrayEquals(CONTENT, Files.readAllBytes(target));
+		ByteBuffer buffer = part.getByteBuffer();
+		assertTrue(buffer.isReadOnly());
+		assertEquals(CONTENT.length, buffer.remaining());
+	}
+
+	private DiskFileItem item(int threshold) throws IOException {
+		DiskFileItemFactory factory = DiskFileItemFactory.builder().setPath(dir).setBufferSize(threshold).get();
+		DiskFileItem item = factory.fileItemBuilder()
+				.setFieldName("file")
+				.setFormField(false)
+				.setFileName("file.txt")
+				.get();
+		try (OutputStream out = item.getOutputStream()) {
+			out.write(CONTENT);
+		}
+		return item;
+	}
+}
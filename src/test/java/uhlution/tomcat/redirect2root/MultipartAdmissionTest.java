@@ -0,0 +1,113 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class MultipartAdmissionTest {
+
+	@Test
+	void concurrencyLimitRejectsWithoutQueue() throws Exception {
+		MultipartAdmission admission = new MultipartAdmission(1, -1, 0, 1000);
+
+		assertTrue(admission.acquire(100));
+		assertFalse(admission.acquire(100));
+
+		admission.release(100);
+		assertTrue(admission.acquire(100));
+		assertEquals(1, admission.getActive());
+	}
+
+	@Test
+	void byteBudgetIsCharged() throws Exception {
+		MultipartAdmission admission = new MultipartAdmission(-1, 1000, 0, 1000);
+
+		assertTrue(admission.acquire(600));
+		assertFalse(admission.acquire(600));
+		assertTrue(admission.acquire(400));
+		assertEquals(1000, admission.getBytesInFlight());
+
+		admission.release(600);
+		admission.release(400);
+		// Larger than the whole budget, but admitted when nothing else is in flight.
+		assertTrue(admission.acquire(5000));
+	}
+
+	@Test
+	void unknownSizeIsChargedWithWholeBudget() throws Exception {
+		MultipartAdmission admission = new MultipartAdmission(-1, 1000, 0, 1000);
+
+		assertTrue(admission.acquire(-1));
+		assertEquals(1000, admission.getBytesInFlight());
+		assertFalse(admission.acquire(1));
+
+		admission.release(-1);
+		assertEquals(0, admission.getBytesInFlight());
+	}
+
+	@Test
+	void queuedRequestIsAdmittedOnRelease() throws Exception {
+		MultipartAdmission admission = new MultipartAdmission(1, -1, 1, 10_000);
+		assertTrue(admission.acquire(0));
+
+		CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+			try {
+				return admission.acquire(0);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		});
+		while (admission.getWaiting() == 0) {
+			Thread.onSpinWait();
+		}
+		// The queue is full.
+		assertFalse(admission.acquire(0));
+
+		admission.release(0);
+		assertTrue(queued.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void queuedRequestTimesOut() throws Exception {
+		MultipartAdmission admission = new MultipartAdmission(1, -1, 1, 50);
+		assertTrue(admission.acquire(0));
+
+		assertFalse(admission.acquire(0));
+		assertEquals(0, admission.getWaiting());
+	}
+}
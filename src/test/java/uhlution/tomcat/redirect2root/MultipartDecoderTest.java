@@ -0,0 +1,167 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import jakarta.servlet.http.Part;
+
+public class MultipartDecoderTest {
+
+	private static final String BODY = "preamble\r\n"
+			+ "------TestBoundary\r\n"
+			+ "Content-Disposition: form-data; name=\"name\"\r\n"
+			+ "\r\n"
+			+ "value\r\n"
+			+ "------TestBoundary\r\n"
+			+ "Content-Disposition: form-data; name=\"file\"; filename=\"test.txt\"\r\n"
+			+ "Content-Type: text/plain\r\n"
+			+ "\r\n"
+			+ "line one\r\n--not a boundary\r\n"
+			+ "------TestBoundary--\r\n";
+
+	private final DiskFileItemFactory factory = DiskFileItemFactory.builder().get();
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 3, 7, 1024 })
+	void bodyIsDecodedInChunks(int chunkSize) throws IOException {
+		MultipartDecoder decoder = decoder(-1, -1, -1);
+		byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+		for (int offset = 0; offset < body.length; offset += chunkSize) {
+			decoder.feed(body, offset, Math.min(chunkSize, body.length - offset));
+		}
+
+		List<Part> parts = decoder.finish();
+
+		assertEquals(2, parts.size());
+		assertNull(parts.get(0).getSubmittedFileName());
+		assertEquals("name", parts.get(0).getName());
+		assertEquals("value", content(parts.get(0)));
+		assertEquals("test.txt", parts.get(1).getSubmittedFileName());
+		assertEquals("text/plain", parts.get(1).getContentType());
+		assertEquals("line one\r\n--not a boundary", content(parts.get(1)));
+	}
+
+	@Test
+	void smallPartsAreKeptInArenaSlices() throws IOException {
+		BufferArena arena = new BufferArena(16, 1024);
+		MultipartDecoder decoder = new MultipartDecoder("----TestBoundary", factory, -1, -1, -1, 16, new TempFileMonitor(), arena);
+		byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+		decoder.feed(body, 0, body.length);
+
+		List<Part> parts = decoder.finish();
+
+		// The field fits into a slice, the file outgrows it and is moved to an item.
+		BufferPart field = assertInstanceOf(BufferPart.class, parts.get(0));
+		assertEquals("value", field.getString());
+		assertInstanceOf(FileItemPart.class, parts.get(1));
+		assertEquals("line one\r\n--not a boundary", content(parts.get(1)));
+		assertEquals(1, arena.getSlicesInUse());
+
+		ByteBuffer copy = field.getByteBuffer();
+		InputStream in = field.getInputStream();
+		field.release();
+		assertEquals(0, arena.getSlicesInUse());
+
+		// The slice may already serve another request: views fail, the copy stays intact.
+		assertThrows(IllegalStateException.class, in::read);
+		arena.acquire().put("overwritten".getBytes(StandardCharsets.UTF_8));
+		assertEquals("value", StandardCharsets.UTF_8.decode(copy).toString());
+	}
+
+	@Test
+	void arenaStaysWithinCapacity() {
+		BufferArena arena = new BufferArena(16, 1000);
+		int slices = 0;
+		while (arena.acquire() != null) {
+			slices++;
+		}
+
+		assertEquals(62, slices);
+		assertTrue(arena.getAllocatedBytes() <= 1000);
+		assertNull(new BufferArena(16, 8).acquire());
+	}
+
+	@Test
+	void truncatedBodyIsRejected() throws IOException {
+		MultipartDecoder decoder = decoder(-1, -1, -1);
+		byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+		decoder.feed(body, 0, body.length - 10);
+
+		assertThrows(FileUploadException.class, decoder::finish);
+	}
+
+	@Test
+	void limitsAreEnforced() {
+		byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+
+		assertTrue(MultipartLimitException.isLimitExceeded(
+				assertThrows(IOException.class, () -> decoder(10, -1, -1).feed(body, 0, body.length))));
+		assertTrue(MultipartLimitException.isLimitExceeded(
+				assertThrows(IOException.class, () -> decoder(-1, 5, -1).feed(body, 0, body.length))));
+		assertTrue(MultipartLimitException.isLimitExceeded(
+				assertThrows(IOException.class, () -> decoder(-1, -1, 1).feed(body, 0, body.length))));
+	}
+
+	@Test
+	void boundaryIsTakenFromContentType() {
+		assertEquals("----TestBoundary", MultipartDecoder.boundary("multipart/form-data; boundary=----TestBoundary"));
+		assertEquals("abc", MultipartDecoder.boundary("multipart/form-data; charset=UTF-8; boundary=\"abc\""));
+		assertNull(MultipartDecoder.boundary("multipart/form-data"));
+	}
+
+	private MultipartDecoder decoder(long maxRequestSize, long maxFileSize, long maxFileCount) {
+		return new MultipartDecoder("----TestBoundary", factory, maxRequestSize, maxFileSize, maxFileCount, 16,
+				new TempFileMonitor(), null);
+	}
+
+	private static String content(Part part) throws IOException {
+		try (InputStream in = part.getInputStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.JakartaServletFileUpload;
+import org.apache.commons.fileupload2.jakarta.JakartaServletRequestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class MultipartParameterRequestWrapperTest {
+
+	private DiskFileItemFactory factory;
+	private MockHttpServletRequest request;
+
+	@BeforeEach
+	void setUp() {
+		factory = DiskFileItemFactory.builder().get();
+		request = new MockHttpServletRequest();
+		request.setContentType("multipart/form-data; boundary=----TestBoundary");
+		request.addParameter("name", "query");
+	}
+
+	@Test
+	void parametersAreMergedAndCached() throws IOException {
+		MultipartParameterRequestWrapper wrapper = new MultipartParameterRequestWrapper(request,
+				List.of(item("name", "form", true), item("other", "value", true)));
+
+		assertArrayEquals(new String[] { "query", "form" }, wrapper.getParameterValues("name"));
+		assertEquals("value", wrapper.getParameter("other"));
+		assertSame(wrapper.getParameterMap(), wrapper.getParameterMap());
+		assertThrows(UnsupportedOperationException.class, () -> wrapper.getParameterMap().remove("name"));
+	}
+
+	@Test
+	void streamedParametersAreMergedInTheSameOrder() throws IOException {
+		request.setContent(("------TestBoundary\r\n"
+				+ "Content-Disposition: form-data; name=\"name\"\r\n"
+				+ "\r\n"
+				+ "form\r\n"
+				+ "------TestBoundary--\r\n").getBytes(StandardCharsets.UTF_8));
+		FileItemInputIterator iterator = new JakartaServletFileUpload<>(factory)
+				.getItemIterator(new JakartaServletRequestContext(request));
+		MultipartParameterRequestWrapper wrapper = new MultipartParameterRequestWrapper(request,
+				new StreamingMultipartReader(iterator, factory, -1, 8192, new TempFileMonitor(), null));
+
+		assertEquals("query", wrapper.getParameter("name"));
+		assertArrayEquals(new String[] { "query", "form" }, wrapper.getParameterValues("name"));
+		assertArrayEquals(new String[] { "query", "form" }, wrapper.getParameterMap().get("name"));
+	}
+
+	@Test
+	void parameterValuesCannotBeChangedByCallers() throws IOException {
+		MultipartParameterRequestWrapper wrapper = new MultipartParameterRequestWrapper(request,
+				List.of(item("name", "form", true)));
+
+		wrapper.getParameterValues("name")[0] = "changed";
+
+		assertArrayEquals(new String[] { "query", "form" }, wrapper.getParameterValues("name"));
+		assertEquals("query", wrapper.getParameter("name"));
+	}
+
+	@Test
+	void partsAreCreatedOnce() throws Exception {
+		MultipartParameterRequestWrapper wrapper = new MultipartParameterRequestWrapper(request,
+				List.of(item("file", "content", false)));
+
+		assertEquals(1, wrapper.getParts().size());
+		assertSame(wrapper.getParts(), wrapper.getParts());
+		assertSame(wrapper.getPart("file"), wrapper.getParts().iterator().next());
+	}
+
+	private DiskFileItem item(String fieldName, String content, boolean formField) throws IOException {
+		DiskFileItem item = factory.fileItemBuilder()
+				.setFieldName(fieldName)
+				.setFormField(formField)
+				.setFileName(formField ? null : fieldName + ".txt")
+				.get();
+		try (OutputStream out = item.getOutputStream()) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return item;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
+
+/**
+ * Load test against an embedded Tomcat with the valve on its host and a
+ * servlet in the ROOT context. Runs with {@code mvn -Pload-test verify}; the
+ * request counts and the thresholds that fail the build are system properties
+ * set in the {@code load-test} profile.
+ */
+public class RedirectToRootValveLoadIT {
+
+	private static final int REQUESTS = Integer.getInteger("loadtest.requests", 2000);
+	private static final int UPLOADS = Integer.getInteger("loadtest.uploads", 200);
+	private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 32);
+	private static final double MIN_RPS = Double.parseDouble(System.getProperty("loadtest.minRps", "0"));
+	private static final long MAX_P99_MILLIS = Long.getLong("loadtest.maxP99Millis", 2000);
+	private static final long MAX_HEAP_MB = Long.getLong("loadtest.maxHeapMb", 1024);
+
+	private static final String BOUNDARY = "----LoadTestBoundary";
+
+	@TempDir
+	static Path baseDir;
+
+	private static Tomcat tomcat;
+	private static RedirectToRootValve valve;
+	private static HttpClient client;
+	private static URI base;
+
+	@BeforeAll
+	static void startTomcat() throws LifecycleException {
+		tomcat = new Tomcat();
+		tomcat.setBaseDir(baseDir.toString());
+		tomcat.setPort(0);
+		tomcat.getConnector();
+
+		valve = new RedirectToRootValve();
+		valve.setRepository(baseDir.resolve("uploads").toString());
+		tomcat.getHost().getPipeline().addValve(valve);
+
+		Context root = tomcat.addContext("", baseDir.toString());
+		Tomcat.addServlet(root, "echo", new EchoServlet());
+		root.addServletMappingDecoded("/", "echo");
+
+		tomcat.start();
+		base = URI.create("http://localhost:" + tomcat.getConnector().getLocalPort());
+		client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+	}
+
+	@AfterAll
+	static void stopTomcat() throws LifecycleException {
+		tomcat.stop();
+		tomcat.destroy();
+	}
+
+	@Test
+	void plainRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(base.resolve("/tenant")).GET().build();
+		load("plain GET", REQUESTS, request, "/tenant 0");
+	}
+
+	@Test
+	void deepPaths() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(base.resolve("/tenant/a/b/c/d/e/f/g/page?q=1")).GET().build();
+		load("deep path GET", REQUESTS, request, "/tenant 0");
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1024, 256 * 1024, 4 * 1024 * 1024 })
+	void multipartUploads(int size) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(base.resolve("/tenant/upload"))
+				.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(multipartBody(size)))
+				.build();
+		load("upload " + (size / 1024) + " KB", UPLOADS, request, "/tenant " + size);
+
+		// Every temp file is deleted once its forward has returned.
+		assertEquals(0, valve.getTempFileCount());
+	}
+
+	private static void load(String name, int requests, HttpRequest request, String expectedBody) throws Exception {
+		long[] latencies = new long[requests];
+		AtomicInteger next = new AtomicInteger();
+		AtomicLong maxHeap = new AtomicLong();
+		AtomicLong maxTemp = new AtomicLong();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		sampler.scheduleAtFixedRate(() -> {
+			maxHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+			maxTemp.accumulateAndGet(valve.getTempFileBytes(), Math::max);
+		}, 0, 10, TimeUnit.MILLISECONDS);
+
+		long start = System.nanoTime();
+		try (ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY)) {
+			Callable<Void> worker = () -> {
+				for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+					long requestStart = System.nanoTime();
+					HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+					latencies[i] = System.nanoTime() - requestStart;
+					assertEquals(200, response.statusCode());
+					assertEquals(expectedBody, response.body());
+				}
+				return null;
+			};
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < CONCURRENCY; i++) {
+				futures.add(workers.submit(worker));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			sampler.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+		double rps = requests * 1e9 / elapsed;
+		double p50 = latencies[requests / 2] / 1e6;
+		double p99 = latencies[Math.min(requests - 1, (int) (requests * 0.99))] / 1e6;
+		long heapMb = maxHeap.get() / (1024 * 1024);
+		System.out.printf(Locale.ROOT, "%-16s %6d requests %9.0f req/s  p50 %8.2f ms  p99 %8.2f ms  heap %5d MB  temp %8d KB%n",
+				name, requests, rps, p50, p99, heapMb, maxTemp.get() / 1024);
+
+		assertTrue(rps >= MIN_RPS, name + ": " + rps + " req/s is below loadtest.minRps " + MIN_RPS);
+		assertTrue(p99 <= MAX_P99_MILLIS, name + ": p99 " + p99 + " ms is above loadtest.maxP99Millis " + MAX_P99_MILLIS);
+		assertTrue(heapMb <= MAX_HEAP_MB, name + ": heap " + heapMb + " MB is above loadtest.maxHeapMb " + MAX_HEAP_MB);
+	}
+
+	private static byte[] multipartBody(int size) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(size + 256);
+		body.write(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"upload.bin\"\r\n"
+				+ "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		byte[] content = new byte[size];
+		Arrays.fill(content, (byte) 'x');
+		body.write(content);
+		body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		return body.toByteArray();
+	}
+
+	/**
+	 * Answers with the original context and the total size of the parts, which
+	 * the valve has handed to Tomcat's request.
+	 */
+	private static final class EchoServlet extends HttpServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+			long size = 0;
+			String contentType = req.getContentType();
+			if (contentType != null && contentType.startsWith("multipart/")) {
+				for (Part part : req.getParts()) {
+					size += part.getSize();
+				}
+			}
+			resp.setContentType("text/plain");
+			resp.getWriter().print(req.getAttribute(RedirectToRootValve.ORIGINAL_CONTEXT_PATH) + " " + size);
+		}
+	}
+}
@@ -31,23 +31,48 @@
 package uhlution.tomcat.redirect2root;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uhlution.tomcat.redirect2root.RedirectToRootValve.ORIGINAL_CONTEXT_PATH;
 import static uhlution.tomcat.redirect2root.RedirectToRootValve.ORIGINAL_REQUEST_URI;
+import static uhlution.tomcat.redirect2root.RedirectToRootValve.SC_PERMANENT_REDIRECT;
+import static uhlution.tomcat.redirect2root.RedirectToRootValve.STAGE_TIMINGS;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Valve;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
+import org.apache.catalina.mapper.MappingData;
+import org.apache.coyote.Adapter;
+import org.apache.coyote.ProtocolHandler;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -58,13 +83,27 @@ import org.springframework.mock.web.DelegatingServletInputStream;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.mock.web.MockMultipartHttpServletRequest;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.ReadListener;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 public class RedirectToRootValveTest {
 
+	private static final String MULTIPART_TYPE = "multipart/form-data; boundary=----TestBoundary";
+	private static final String MULTIPART_BODY = "------TestBoundary\r\n"
+			+ "Content-Disposition: form-data; name=\"file\"; filename=\"test.txt\"\r\n"
+			+ "Content-Type: text/plain\r\n"
+			+ "\r\n"
+			+ "Testinhalt\r\n"
+			+ "------TestBoundary--\r\n";
+
 	private RedirectToRootValve valve;
 	private Request mockRequest;
 	private Response mockResponse;
@@ -72,6 +111,15 @@ public class RedirectToRootValveTest {
 	private HttpServletRequest mockHttpServletReq;
 	private HttpServletResponse mockHttpServletResp;
 	private Context mockContext;
+	private Valve mockNextValve;
+	private final Map<String, Object> notes = new HashMap<>();
+
+	@AfterEach
+	void tearDown() throws LifecycleException {
+		if (valve.getState().isAvailable()) {
+			valve.stop();
+		}
+	}
 
 	@BeforeEach
 	void setUp() throws Exception {
@@ -83,7 +131,7 @@ public class RedirectToRootValveTest {
 		mockHttpServletReq = mock(HttpServletRequest.class);
 		mockHttpServletResp = mock(HttpServletResponse.class);
 
-		Valve mockNextValve = mock(Valve.class);
+		mockNextValve = mock(Valve.class);
 		doNothing().when(mockNextValve).invoke(any(Request.class), any(Response.class));
 		valve.setNext(mockNextValve); // Sets the next the next valve.
 
@@ -96,6 +144,10 @@ public class RedirectToRootValveTest {
 		when(mockResponse.getResponse()).thenReturn(mockHttpServletResp);
 		when(mockContext.getPath()).thenReturn("/");
 		when(mockRequest.getContextPath()).thenReturn("");
+		// Notes are kept like in a real request.
+		doAnswer(invocation -> notes.put(invocation.getArgument(0), invocation.getArgument(1)))
+				.when(mockRequest).setNote(anyString(), any());
+		when(mockRequest.getNote(anyString())).thenAnswer(invocation -> notes.get(invocation.getArgument(0)));
 	}
 
 	@Test
@@ -179,4 +231,429 @@ public class RedirectToRootValveTest {
 
 		assertEquals("/", redirectCaptor.getValue(), "Expected: " + "/" + ", Actual: " + redirectCaptor.getValue());
 	}
+
+	@Test
+	void streamingMultipartRejectsOversizedBody() throws IOException, ServletException {
+		valve.setMultipartMode("streaming");
+		valve.setMaxRequestSize(10);
+
+		when(mockRequest.getContentType()).thenReturn("multipart/form-data; boundary=----TestBoundary");
+		when(mockHttpServletReq.getContentType()).thenReturn("multipart/form-data; boundary=----TestBoundary");
+		when(mockRequest.getContentLength()).thenReturn(1000);
+		when(mockRequest.getContentLengthLong()).thenReturn(1000L);
+		when(mockRequest.getHeader("Content-Length")).thenReturn("1000");
+		when(mockRequest.getInputStream()).thenReturn(new DelegatingServletInputStream(new ByteArrayInputStream(new byte[1000])));
+		when(mockRequest.getRequestURI()).thenReturn("/test");
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// The declared size exceeds the limit, so the body is rejected before any forward.
+		verify(mockResponse).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+		verify(mockRequestDispatcher, never()).forward(any(), any());
+	}
+
+	@Test
+	void nativeMultipartLeavesBodyToTarget() throws IOException, ServletException {
+		valve.setPreferNativeMultipart(true);
+		Wrapper mockWrapper = mock(Wrapper.class);
+		when(mockWrapper.getMultipartConfigElement()).thenReturn(new MultipartConfigElement(""));
+		when(mockRequest.getWrapper()).thenReturn(mockWrapper);
+		when(mockRequest.getContentType()).thenReturn("multipart/form-data; boundary=----TestBoundary");
+		when(mockHttpServletReq.getContentType()).thenReturn("multipart/form-data; boundary=----TestBoundary");
+		when(mockRequest.getRequestURI()).thenReturn("/test");
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// Forwarded as it is, the body has not been read.
+		verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+		verify(mockRequest, never()).getInputStream();
+		assertEquals(1, valve.getMultipartRequestCount());
+		assertEquals(1, valve.getNativeMultipartCount());
+	}
+
+	@Test
+	void statisticsAreCounted() throws IOException {
+		when(mockRequest.getRequestURI()).thenReturn("/test/abc");
+		valve.invoke(mockRequest, mockResponse);
+
+		when(mockRequest.getRequestDispatcher(anyString())).thenReturn(null);
+		valve.invoke(mockRequest, mockResponse);
+
+		assertEquals(2, valve.getRequestCount());
+		assertEquals(1, valve.getForwardCount());
+		assertEquals(1, valve.getDispatcherMissingCount());
+		assertEquals(0, valve.getMultipartRequestCount());
+	}
+
+	@Test
+	void remapInvokesNextValveWithRewrittenUri() throws Exception {
+		valve.setDispatchMode("remap");
+		org.apache.coyote.Request coyoteRequest = new org.apache.coyote.Request();
+		Connector mockConnector = mock(Connector.class);
+		ProtocolHandler mockProtocolHandler = mock(ProtocolHandler.class);
+		Adapter mockAdapter = mock(Adapter.class);
+		when(mockRequest.getRequestURI()).thenReturn("/test/abc%20def");
+		when(mockRequest.getCoyoteRequest()).thenReturn(coyoteRequest);
+		when(mockRequest.getMappingData()).thenReturn(new MappingData());
+		when(mockRequest.getConnector()).thenReturn(mockConnector);
+		when(mockConnector.getURICharset()).thenReturn(StandardCharsets.UTF_8);
+		when(mockConnector.getProtocolHandler()).thenReturn(mockProtocolHandler);
+		when(mockProtocolHandler.getAdapter()).thenReturn(mockAdapter);
+		when(mockAdapter.prepare(any(), any())).thenReturn(true);
+
+		valve.invoke(mockRequest, mockResponse);
+
+		assertEquals("/abc%20def", coyoteRequest.requestURI().toString());
+		assertEquals("/abc def", coyoteRequest.decodedURI().toString());
+		verify(mockRequest).setAttribute(eq(ORIGINAL_CONTEXT_PATH), eq("/test"));
+		verify(mockRequest).setAttribute(eq(ORIGINAL_REQUEST_URI), eq("/test/abc%20def"));
+		verify(mockNextValve).invoke(mockRequest, mockResponse);
+		verify(mockRequest, never()).getRequestDispatcher(anyString());
+		assertEquals(1, valve.getForwardCount());
+	}
+
+	@Test
+	void virtualThreadParsesAndForwardsAsync() throws Exception {
+		valve.setMultipartMode("virtual-thread");
+		MockMultipartHttpServletRequest request = new MockMultipartHttpServletRequest();
+		MockMultipartFile multipartFile = new MockMultipartFile("file", "test.txt", "text/plain", "Testinhalt".getBytes());
+		request.setContentType("multipart/form-data; boundary=----TestBoundary");
+		request.addFile(multipartFile);
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+
+		when(mockRequest.getContentType()).thenReturn("multipart/form-data; boundary=----TestBoundary");
+		when(mockRequest.getRequest()).thenReturn(request);
+		when(mockRequest.getInputStream()).thenReturn(new DelegatingServletInputStream(multipartFile.getInputStream()));
+		when(mockRequest.getRequestURI()).thenReturn("/test");
+		when(mockRequest.startAsync(any(), any())).thenReturn(mockAsyncContext);
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// The container thread returns at once, the virtual thread forwards and completes.
+		verify(mockRequest).setAsyncSupported(true);
+		verify(mockRequestDispatcher, timeout(5000)).forward(any(AsyncForwardRequest.class), eq(mockHttpServletResp));
+		verify(mockAsyncContext, timeout(5000)).complete();
+		assertEquals(1, valve.getForwardCount());
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "4, 413", "-1, 500" })
+	void virtualThreadFailureIsReportedAndReleased(long maxFileSize, int status) throws Exception {
+		valve.setMultipartMode("virtual-thread");
+		valve.setMaxConcurrentMultipart(1);
+		valve.setMaxFileSize(maxFileSize);
+		startValve();
+		// Without a limit the body fails for lacking its closing boundary.
+		stubMultipartBody(maxFileSize > 0 ? MULTIPART_BODY : MULTIPART_BODY.substring(0, MULTIPART_BODY.indexOf("------TestBoundary--")));
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		when(mockRequest.startAsync(any(), any())).thenReturn(mockAsyncContext);
+
+		valve.invoke(mockRequest, mockResponse);
+
+		verify(mockResponse, timeout(5000)).sendError(status);
+		verify(mockAsyncContext, timeout(5000)).complete();
+		verify(mockRequestDispatcher, never()).forward(any(), any());
+		assertEquals(0, valve.getMultipartActiveCount());
+	}
+
+	@Test
+	void virtualThreadRejectedAfterStopCompletesAsync() throws Exception {
+		valve.setMultipartMode("virtual-thread");
+		startValve();
+		valve.stop();
+		stubMultipartBody(MULTIPART_BODY);
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		when(mockRequest.startAsync(any(), any())).thenReturn(mockAsyncContext);
+
+		assertThrows(RejectedExecutionException.class, () -> valve.invoke(mockRequest, mockResponse));
+
+		verify(mockAsyncContext).complete();
+		verify(mockRequestDispatcher, never()).forward(any(), any());
+	}
+
+	@Test
+	void virtualThreadTargetGoingAsyncCompletesItself() throws Exception {
+		valve.setMultipartMode("virtual-thread");
+		// Every non-empty part goes to a temp file.
+		valve.setFileSizeThreshold(1);
+		valve.setMaxConcurrentMultipart(1);
+		startValve();
+		stubMultipartBody(MULTIPART_BODY);
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		when(mockRequest.startAsync(any(), any())).thenReturn(mockAsyncContext);
+		doAnswer(invocation -> ((HttpServletRequest) invocation.getArgument(0)).startAsync())
+				.when(mockRequestDispatcher).forward(any(), any());
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// The target took over the async context, the valve neither completes nor releases.
+		verify(mockRequestDispatcher, timeout(5000)).forward(any(), any());
+		verify(mockAsyncContext, after(500).never()).complete();
+		assertEquals(1, valve.getTempFileCount());
+		assertEquals(1, valve.getMultipartActiveCount());
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(mockAsyncContext).addListener(listener.capture());
+		listener.getValue().onComplete(new AsyncEvent(mockAsyncContext));
+		assertEquals(0, valve.getTempFileCount());
+		assertEquals(0, valve.getMultipartActiveCount());
+	}
+
+	@Test
+	void nonBlockingWithoutBoundaryIsRejected() throws Exception {
+		valve.setMultipartMode("non-blocking");
+		valve.setMaxConcurrentMultipart(1);
+		startValve();
+		stubMultipartBody(MULTIPART_BODY);
+		when(mockRequest.getContentType()).thenReturn("multipart/form-data");
+
+		valve.invoke(mockRequest, mockResponse);
+
+		verify(mockResponse).sendError(HttpServletResponse.SC_BAD_REQUEST);
+		verify(mockRequest, never()).startAsync(any(), any());
+		assertEquals(0, valve.getMultipartActiveCount());
+		assertEquals(0, valve.getMultipartRejectedCount());
+	}
+
+	@Test
+	void nonBlockingLimitExceededWhileReadingIsRejected() throws Exception {
+		valve.setMultipartMode("non-blocking");
+		valve.setMaxConcurrentMultipart(1);
+		valve.setMaxFileSize(4);
+		startValve();
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		ReadListener listener = invokeNonBlocking(MULTIPART_BODY, mockAsyncContext);
+		assertEquals(1, valve.getMultipartActiveCount());
+
+		// The container reports what onDataAvailable throws to onError.
+		IOException failure = assertThrows(IOException.class, listener::onDataAvailable);
+		listener.onError(failure);
+		listener.onError(new IOException("reported twice"));
+
+		verify(mockResponse).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+		verify(mockRequestDispatcher, never()).forward(any(), any());
+		verify(mockAsyncContext, times(1)).complete();
+		assertEquals(0, valve.getMultipartActiveCount());
+	}
+
+	@Test
+	void nonBlockingForwardsAndCompletesOnce() throws Exception {
+		valve.setMultipartMode("non-blocking");
+		valve.setMaxConcurrentMultipart(1);
+		startValve();
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		ReadListener listener = invokeNonBlocking(MULTIPART_BODY, mockAsyncContext);
+
+		listener.onDataAvailable();
+		listener.onAllDataRead();
+		// Late callbacks after completion must not release or complete again.
+		listener.onAllDataRead();
+		listener.onError(new IOException("late"));
+
+		verify(mockRequestDispatcher, times(1)).forward(any(AsyncForwardRequest.class), eq(mockHttpServletResp));
+		verify(mockAsyncContext, times(1)).complete();
+		verify(mockResponse, never()).sendError(anyInt());
+		assertEquals(0, valve.getMultipartActiveCount());
+		assertEquals(1, valve.getForwardCount());
+	}
+
+	@Test
+	void nonBlockingTargetGoingAsyncCompletesItself() throws Exception {
+		valve.setMultipartMode("non-blocking");
+		valve.setMaxConcurrentMultipart(1);
+		startValve();
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		doAnswer(invocation -> ((HttpServletRequest) invocation.getArgument(0)).startAsync())
+				.when(mockRequestDispatcher).forward(any(), any());
+		ReadListener listener = invokeNonBlocking(MULTIPART_BODY, mockAsyncContext);
+
+		listener.onDataAvailable();
+		listener.onAllDataRead();
+
+		// The target took over the async context, the valve neither completes nor releases.
+		verify(mockRequestDispatcher).forward(any(), any());
+		verify(mockAsyncContext, never()).complete();
+		assertEquals(1, valve.getMultipartActiveCount());
+		ArgumentCaptor<AsyncListener> asyncListener = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(mockAsyncContext).addListener(asyncListener.capture());
+		asyncListener.getValue().onComplete(new AsyncEvent(mockAsyncContext));
+		assertEquals(0, valve.getMultipartActiveCount());
+	}
+
+	@Test
+	void serverTimingIsSetBeforeForwardAndCompletedAfterwards() throws Exception {
+		valve.setServerTimingEnabled(true);
+		stubMultipartBody(MULTIPART_BODY);
+		AtomicBoolean committed = new AtomicBoolean();
+		AtomicReference<String> headerAtForward = new AtomicReference<>();
+		when(mockResponse.isCommitted()).thenAnswer(invocation -> committed.get());
+		doAnswer(invocation -> headerAtForward.getAndSet(invocation.getArgument(1)))
+				.when(mockResponse).setHeader(eq("Server-Timing"), anyString());
+		doAnswer(invocation -> {
+			// The target commits the response.
+			committed.set(true);
+			return null;
+		}).when(mockRequestDispatcher).forward(any(), any());
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// The header is only set before the forward, the attribute also gets the forward.
+		verify(mockResponse).setHeader(eq("Server-Timing"), anyString());
+		assertTrue(headerAtForward.get().matches("rewrite;dur=\\d+\\.\\d{3}, parse;dur=\\d+\\.\\d{3}, wrap;dur=\\d+\\.\\d{3}"),
+				headerAtForward.get());
+		ArgumentCaptor<Object> timings = ArgumentCaptor.forClass(Object.class);
+		verify(mockRequest, times(2)).setAttribute(eq(STAGE_TIMINGS), timings.capture());
+		assertTrue(timings.getValue().toString().startsWith(headerAtForward.get() + ", forward;dur="), timings.getValue().toString());
+	}
+
+	@Test
+	void serverTimingIsOffByDefault() throws Exception {
+		stubMultipartBody(MULTIPART_BODY);
+
+		valve.invoke(mockRequest, mockResponse);
+
+		verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+		verify(mockResponse, never()).setHeader(eq("Server-Timing"), anyString());
+		verify(mockRequest, never()).setAttribute(eq(STAGE_TIMINGS), any());
+		assertTrue(notes.isEmpty());
+	}
+
+	@Test
+	void clientRedirectSendsLocationWithContext() throws Exception {
+		valve.setClientRedirectMethods("GET");
+		startValve();
+		when(mockRequest.getMethod()).thenReturn("GET");
+		when(mockRequest.getRequestURI()).thenReturn("/tenant/orders");
+
+		valve.invoke(mockRequest, mockResponse);
+
+		verify(mockResponse).setStatus(SC_PERMANENT_REDIRECT);
+		verify(mockResponse).setHeader("Location", "/orders?originalContextPath=%2Ftenant");
+		verify(mockRequestDispatcher, never()).forward(any(), any());
+		assertEquals(1, valve.getClientRedirectCount());
+	}
+
+	@Test
+	void clientRedirectFollowUpIsPassedOn() throws Exception {
+		valve.setClientRedirectMethods("GET");
+		startValve();
+		when(mockRequest.getMethod()).thenReturn("GET");
+		when(mockRequest.getRequestURI()).thenReturn("/orders");
+		when(mockRequest.getQueryString()).thenReturn("originalContextPath=%2Ftenant");
+
+		valve.invoke(mockRequest, mockResponse);
+
+		verify(mockRequest).setAttribute(ORIGINAL_CONTEXT_PATH, "/tenant");
+		verify(mockRequest).setAttribute(ORIGINAL_REQUEST_URI, "/tenant/orders");
+		verify(mockNextValve).invoke(mockRequest, mockResponse);
+		verify(mockRequestDispatcher, never()).forward(any(), any());
+	}
+
+	@Test
+	void clientRedirectMarkerIsIgnoredForOtherMethods() throws Exception {
+		valve.setClientRedirectMethods("GET");
+		startValve();
+		when(mockRequest.getMethod()).thenReturn("POST");
+		when(mockRequest.getRequestURI()).thenReturn("/tenantA/upload");
+		when(mockRequest.getQueryString()).thenReturn("originalContextPath=%2Fx");
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// Rewritten like any other request, the marker does not skip the valve.
+		verify(mockRequest).setAttribute(ORIGINAL_CONTEXT_PATH, "/tenantA");
+		verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+		verify(mockNextValve, never()).invoke(any(), any());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void tempFilesAreDeletedAfterForward(boolean forwardFails) throws Exception {
+		valve.setFileSizeThreshold(0);
+		stubMultipartBody(MULTIPART_BODY);
+		AtomicLong filesDuringForward = new AtomicLong();
+		AtomicLong bytesDuringForward = new AtomicLong();
+		doAnswer(invocation -> {
+			filesDuringForward.set(valve.getTempFileCount());
+			bytesDuringForward.set(valve.getTempFileBytes());
+			if (forwardFails) {
+				throw new ServletException("Target failed");
+			}
+			return null;
+		}).when(mockRequestDispatcher).forward(any(), any());
+
+		if (forwardFails) {
+			assertThrows(RuntimeException.class, () -> valve.invoke(mockRequest, mockResponse));
+		} else {
+			valve.invoke(mockRequest, mockResponse);
+		}
+
+		assertEquals(1, filesDuringForward.get());
+		assertEquals("Testinhalt".length(), bytesDuringForward.get());
+		assertEquals(0, valve.getTempFileCount());
+		assertEquals(0, valve.getTempFileBytes());
+	}
+
+	@Test
+	void asyncTargetKeepsPartsUntilRequestCompletes() throws Exception {
+		// Every non-empty part goes to a temp file.
+		valve.setFileSizeThreshold(1);
+		valve.setMaxConcurrentMultipart(1);
+		startValve();
+		stubMultipartBody(MULTIPART_BODY);
+		AsyncContext mockAsyncContext = mock(AsyncContext.class);
+		when(mockRequest.isAsyncStarted()).thenReturn(true);
+		when(mockRequest.getAsyncContext()).thenReturn(mockAsyncContext);
+
+		valve.invoke(mockRequest, mockResponse);
+
+		// The target went async, its temp file and the admission are kept until the request completes.
+		assertEquals(1, valve.getTempFileCount());
+		assertEquals(1, valve.getMultipartActiveCount());
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(mockAsyncContext).addListener(listener.capture());
+		listener.getValue().onComplete(new AsyncEvent(mockAsyncContext));
+		assertEquals(0, valve.getTempFileCount());
+		assertEquals(0, valve.getMultipartActiveCount());
+	}
+
+	/**
+	 * Starts the valve on a mocked host, for the features set up in startInternal().
+	 */
+	private void startValve() throws LifecycleException {
+		Host mockHost = mock(Host.class);
+		when(mockHost.getDomain()).thenReturn("Catalina");
+		when(mockHost.getMBeanKeyProperties()).thenReturn(",host=localhost");
+		valve.setContainer(mockHost);
+		valve.start();
+	}
+
+	/**
+	 * Invokes the valve in non-blocking mode with a body the returned listener
+	 * reads when the test calls it.
+	 */
+	private ReadListener invokeNonBlocking(String body, AsyncContext asyncContext) throws IOException {
+		stubMultipartBody(body);
+		ByteArrayInputStream source = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+		ServletInputStream in = mock(ServletInputStream.class);
+		when(in.isReady()).thenReturn(true);
+		when(in.read(any(byte[].class))).thenAnswer(invocation -> source.read(invocation.getArgument(0)));
+		when(mockRequest.getInputStream()).thenReturn(in);
+		when(mockRequest.startAsync(any(), any())).thenReturn(asyncContext);
+
+		valve.invoke(mockRequest, mockResponse);
+
+		ArgumentCaptor<ReadListener> listener = ArgumentCaptor.forClass(ReadListener.class);
+		verify(in).setReadListener(listener.capture());
+		return listener.getValue();
+	}
+
+	private void stubMultipartBody(String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		when(mockRequest.getContentType()).thenReturn(MULTIPART_TYPE);
+		when(mockHttpServletReq.getContentType()).thenReturn(MULTIPART_TYPE);
+		when(mockRequest.getContentLength()).thenReturn(bytes.length);
+		when(mockRequest.getContentLengthLong()).thenReturn((long) bytes.length);
+		when(mockRequest.getHeader("Content-Length")).thenReturn(String.valueOf(bytes.length));
+		when(mockRequest.getInputStream()).thenReturn(new DelegatingServletInputStream(new ByteArrayInputStream(bytes)));
+		when(mockRequest.getRequestURI()).thenReturn("/test");
+	}
 }
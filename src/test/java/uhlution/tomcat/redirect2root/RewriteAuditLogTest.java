@@ -0,0 +1,78 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RewriteAuditLogTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void recordsAreWrittenInOrder() throws IOException {
+		RewriteAuditLog auditLog = new RewriteAuditLog(directory, "audit", 16, 1.0);
+		for (int i = 0; i < 10; i++) {
+			auditLog.record("/tenant/page" + i, "/page" + i);
+		}
+		auditLog.close();
+
+		List<String> lines;
+		try (Stream<Path> files = Files.list(directory)) {
+			Path file = files.filter(f -> f.getFileName().toString().startsWith("audit.")).findFirst().orElseThrow();
+			lines = Files.readAllLines(file);
+		}
+
+		assertEquals(10 - auditLog.getDropped(), lines.size());
+		assertEquals(lines.size(), auditLog.getWritten());
+		assertTrue(lines.get(0).endsWith(" /tenant/page0 -> /page0"), lines.get(0));
+	}
+
+	@Test
+	void sampledOutRecordsAreNotWritten() throws IOException {
+		RewriteAuditLog auditLog = new RewriteAuditLog(directory, "audit", 16, 0.0);
+		auditLog.record("/tenant/page", "/page");
+		auditLog.close();
+
+		assertEquals(0, auditLog.getWritten());
+		assertEquals(0, auditLog.getDropped());
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2025, Michael Uhl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uhlution.tomcat.redirect2root;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.tomcat.util.buf.CharChunk;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class RewriteScannerTest {
+
+	@ParameterizedTest
+	@CsvSource({ "'', '', /", "/, /, /", "/test, /test, /", "/test/, /test, /", "/test?q=1, /test, /?q=1",
+			"/test/abc/, /test, /abc", "/test/abc/?q=1, /test, /abc/?q=1", "/test//, /test, /", "abc, '', /abc",
+			"a/b, /b, /b" })
+	void scan(String uri, String context, String forwardPath) {
+		Rewrite rewrite = RewriteScanner.scan(uri);
+
+		assertEquals(context, rewrite.context());
+		assertEquals(forwardPath, rewrite.forwardPath());
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "/test/abc, /test, /abc", "/test?q=1, /test, /?q=1" })
+	void scanCharChunk(String uri, String context, String forwardPath) {
+		CharChunk chunk = new CharChunk();
+		chunk.setChars(uri.toCharArray(), 0, uri.length());
+
+		Rewrite rewrite = RewriteScanner.scan(chunk);
+
+		assertEquals(context, rewrite.context());
+		assertEquals(forwardPath, rewrite.forwardPath());
+	}
+}